@@ -0,0 +1,344 @@
+//util->BinaryUserCodec
+package util;
+
+import models.CompletionCalendar;
+import models.Task;
+import models.TaskTotals;
+import models.User;
+import models.UserHeader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Compact binary snapshot format for users with large task lists.
+//
+// Layout (version 8):
+//   magic "SLUB", version byte
+//   header length (since 8): 4 bytes big-endian, the bytes from after it to the string table,
+//          so readers of a prefix know how much of the file the header takes
+//   username, xp, level, coins, totalCompletedTasks, journalSequence,
+//   version (since 2), oldest completion epoch day (since 3; Long.MAX_VALUE if none)
+//   task totals (since 4): difficulty count, then per difficulty: tasks, completed,
+//          completed XP, completed coins
+//   archived segments (since 7; -1 if unknown)
+//   completion days (since 6): count, then per day with a completion: epoch day (the first
+//          in full, then the gap from the previous one), tasks, XP, coins
+//   string table: count, then each distinct task description once
+//   tasks: count, then per task: id (since 5), description index, xpReward, coinReward,
+//          flags byte (difficulty ordinal | completed | has date), [epoch day]
+// Ints are zigzag varints, strings are varint length + UTF-8.
+public class BinaryUserCodec {
+    private static final byte[] MAGIC = {'S', 'L', 'U', 'B'};
+    static final int VERSION = 8;
+    private static final int LENGTH_BYTES = 4;
+
+    private static final int FLAG_COMPLETED = 0x10;
+    private static final int FLAG_HAS_DATE = 0x20;
+    private static final int DIFFICULTY_MASK = 0x0F;
+
+    // Format version of a binary snapshot
+    static int version(byte[] data) {
+        return data.length > MAGIC.length ? data[MAGIC.length] & 0xFF : 0;
+    }
+
+    public static boolean isBinary(byte[] data) {
+        if (data.length < MAGIC.length) return false;
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (data[i] != MAGIC[i]) return false;
+        }
+        return true;
+    }
+
+    public static byte[] encode(User user) {
+        // One consistent view, even if the UI is changing the user meanwhile
+        User.Stats stats = user.getStats();
+        List<Task> tasks = user.getTaskSnapshot();
+        Output out = new Output(64 + tasks.size() * 8);
+        out.bytes(MAGIC);
+        out.raw(VERSION);
+
+        // The header goes into its own buffer first, so its length can be written ahead of it
+        Output header = new Output(256);
+        writeHeader(header, user, stats, tasks);
+        out.fixedInt(header.size());
+        out.bytes(header.toByteArray());
+
+        Map<String, Integer> stringIds = new HashMap<>();
+        List<String> strings = new ArrayList<>();
+        int[] descriptionIds = new int[tasks.size()];
+        for (int i = 0; i < tasks.size(); i++) {
+            String description = tasks.get(i).getDescription();
+            Integer id = stringIds.get(description);
+            if (id == null) {
+                id = strings.size();
+                stringIds.put(description, id);
+                strings.add(description);
+            }
+            descriptionIds[i] = id;
+        }
+        out.varint(strings.size());
+        for (String s : strings) {
+            out.string(s);
+        }
+
+        out.varint(tasks.size());
+        for (int i = 0; i < tasks.size(); i++) {
+            Task task = tasks.get(i);
+            out.varlong(task.getId());
+            out.varint(descriptionIds[i]);
+            out.varint(task.getXpReward());
+            out.varint(task.getCoinReward());
+            LocalDate date = task.getCompletionDate();
+            int flags = task.getDifficulty().ordinal();
+            if (task.isCompleted()) flags |= FLAG_COMPLETED;
+            if (date != null) flags |= FLAG_HAS_DATE;
+            out.raw(flags);
+            if (date != null) out.varlong(date.toEpochDay());
+        }
+        return out.toByteArray();
+    }
+
+    private static void writeHeader(Output out, User user, User.Stats stats, List<Task> tasks) {
+        out.string(user.getUsername());
+        out.varint(stats.getXp());
+        out.varint(stats.getLevel());
+        out.varint(stats.getCoins());
+        out.varint(stats.getTotalCompletedTasks());
+        out.varlong(user.getJournalSequence());
+        out.varlong(user.getVersion());
+        out.varlong(UserHeader.oldestCompletionDay(tasks));
+        TaskTotals totals = TaskTotals.of(tasks);
+        Task.Difficulty[] difficulties = Task.Difficulty.values();
+        out.varint(difficulties.length);
+        for (Task.Difficulty d : difficulties) {
+            out.varint(totals.getTasks(d));
+            out.varint(totals.getCompleted(d));
+            out.varlong(totals.getCompletedXp(d));
+            out.varlong(totals.getCompletedCoins(d));
+        }
+        out.varint(user.getArchivedSegments());
+        writeCalendar(out, user.getCompletionCalendar());
+    }
+
+    // How many bytes from the start of a snapshot decodeHeader needs, read from the first few of
+    // them; -1 if prefix is too short to tell or the snapshot is older than the header length
+    public static int headerBytes(byte[] prefix) {
+        int start = MAGIC.length + 1;
+        if (!isBinary(prefix) || version(prefix) < 8 || prefix.length < start + LENGTH_BYTES) return -1;
+        int length = ByteBuffer.wrap(prefix, start, LENGTH_BYTES).getInt();
+        return length < 0 ? -1 : start + LENGTH_BYTES + length;
+    }
+
+    // Reads just the header; data only has to hold the beginning of the snapshot (see headerBytes)
+    public static UserHeader decodeHeader(byte[] data) throws IOException {
+        return readHeader(new Input(data, MAGIC.length));
+    }
+
+    public static User decode(byte[] data) throws IOException {
+        Input in = new Input(data, MAGIC.length);
+        UserHeader header = readHeader(in);
+
+        User user = new User(header.getUsername());
+        user.setXp(header.getXp());
+        user.setLevel(header.getLevel());
+        user.setCoins(header.getCoins());
+        user.setTotalCompletedTasks(header.getTotalCompletedTasks());
+        user.setJournalSequence(header.getJournalSequence());
+        user.setVersion(header.getVersion());
+        user.setArchivedSegments(header.getArchivedSegments());
+
+        String[] strings = new String[in.varint()];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = in.string();
+        }
+
+        Task.Difficulty[] difficulties = Task.Difficulty.values();
+        boolean hasIds = version(data) >= 5; // older snapshots get ids when added to the user
+        int taskCount = in.varint();
+        List<Task> tasks = new ArrayList<>(taskCount);
+        for (int i = 0; i < taskCount; i++) {
+            long id = hasIds ? in.varlong() : 0;
+            String description = strings[in.varint()];
+            int xp = in.varint();
+            int coins = in.varint();
+            int flags = in.raw();
+            int ordinal = flags & DIFFICULTY_MASK;
+            Task task = new Task(description, xp, coins,
+                    ordinal < difficulties.length ? difficulties[ordinal] : Task.Difficulty.EASY);
+            LocalDate date = (flags & FLAG_HAS_DATE) != 0 ? LocalDate.ofEpochDay(in.varlong()) : null;
+            if ((flags & FLAG_COMPLETED) != 0) {
+                task.setCompleted(true);
+            }
+            // setCompleted stamps today's date; keep what was stored (possibly none)
+            task.setCompletionDate(date);
+            task.setId(id);
+            tasks.add(task);
+        }
+        user.getTasks().addAll(tasks);
+        CompletionCalendar calendar = header.getCompletionCalendar();
+        user.setCompletionCalendar(calendar != null ? calendar : CompletionCalendar.of(tasks));
+        return user;
+    }
+
+    private static UserHeader readHeader(Input in) throws IOException {
+        if (!isBinary(in.data)) throw new IOException("Not a binary user snapshot");
+        int version = in.raw();
+        if (version < 1 || version > VERSION) throw new IOException("Unsupported binary user snapshot version " + version);
+        if (version >= 8 && in.fixedInt() < 0) throw new IOException("Corrupt header length");
+        String username = in.string();
+        int xp = in.varint();
+        int level = in.varint();
+        int coins = in.varint();
+        int totalCompletedTasks = in.varint();
+        long journalSequence = in.varlong();
+        long userVersion = version >= 2 ? in.varlong() : 0;
+        long oldestCompletionDay = version >= 3 ? in.varlong() : UserHeader.OLDEST_UNKNOWN;
+        TaskTotals taskTotals = version >= 4 ? readTotals(in) : null;
+        int archivedSegments = version >= 7 ? in.varint() : UserHeader.ARCHIVED_UNKNOWN;
+        CompletionCalendar completionCalendar = version >= 6 ? readCalendar(in) : null;
+        return new UserHeader(username, xp, level, coins, totalCompletedTasks, journalSequence, userVersion,
+                oldestCompletionDay, taskTotals, completionCalendar, archivedSegments);
+    }
+
+    private static void writeCalendar(Output out, CompletionCalendar calendar) {
+        out.varint(calendar.getActiveDays());
+        long previous = 0;
+        for (long day = calendar.firstDay(); day <= calendar.lastDay(); day++) {
+            if (calendar.getTasks(day) == 0) continue;
+            out.varlong(day - previous);
+            out.varint(calendar.getTasks(day));
+            out.varlong(calendar.getXp(day));
+            out.varlong(calendar.getCoins(day));
+            previous = day;
+        }
+    }
+
+    private static CompletionCalendar readCalendar(Input in) throws IOException {
+        int count = in.varint();
+        if (count < 0 || count > CompletionCalendar.MAX_DAYS) throw new IOException("Corrupt completion days");
+        long[] days = new long[count];
+        int[] tasks = new int[count];
+        long[] xp = new long[count];
+        long[] coins = new long[count];
+        long previous = 0;
+        for (int i = 0; i < count; i++) {
+            days[i] = previous + in.varlong();
+            tasks[i] = in.varint();
+            xp[i] = in.varlong();
+            coins[i] = in.varlong();
+            previous = days[i];
+        }
+        return CompletionCalendar.of(days, tasks, xp, coins);
+    }
+
+    private static TaskTotals readTotals(Input in) throws IOException {
+        int count = in.varint();
+        if (count < 0 || count > 64) throw new IOException("Corrupt task totals");
+        int[] tasks = new int[count];
+        int[] completed = new int[count];
+        long[] xp = new long[count];
+        long[] coins = new long[count];
+        for (int d = 0; d < count; d++) {
+            tasks[d] = in.varint();
+            completed[d] = in.varint();
+            xp[d] = in.varlong();
+            coins[d] = in.varlong();
+        }
+        return new TaskTotals(tasks, completed, xp, coins);
+    }
+
+    private static class Output extends ByteArrayOutputStream {
+        Output(int size) {
+            super(size);
+        }
+
+        void raw(int b) {
+            write(b);
+        }
+
+        void bytes(byte[] b) {
+            write(b, 0, b.length);
+        }
+
+        void fixedInt(int value) {
+            for (int shift = 24; shift >= 0; shift -= 8) {
+                write(value >>> shift);
+            }
+        }
+
+        void varint(int value) {
+            varlong(value);
+        }
+
+        void varlong(long value) {
+            long v = (value << 1) ^ (value >> 63); // zigzag
+            while ((v & ~0x7FL) != 0) {
+                write((int) ((v & 0x7F) | 0x80));
+                v >>>= 7;
+            }
+            write((int) v);
+        }
+
+        void string(String s) {
+            byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+            varint(utf8.length);
+            bytes(utf8);
+        }
+    }
+
+    private static class Input {
+        private final byte[] data;
+        private int pos;
+
+        Input(byte[] data, int pos) {
+            this.data = data;
+            this.pos = pos;
+        }
+
+        int raw() throws IOException {
+            if (pos >= data.length) throw new IOException("Truncated binary user snapshot");
+            return data[pos++] & 0xFF;
+        }
+
+        int fixedInt() throws IOException {
+            int v = 0;
+            for (int i = 0; i < LENGTH_BYTES; i++) {
+                v = (v << 8) | raw();
+            }
+            return v;
+        }
+
+        int varint() throws IOException {
+            long v = varlong();
+            if (v < Integer.MIN_VALUE || v > Integer.MAX_VALUE) throw new IOException("Corrupt varint");
+            return (int) v;
+        }
+
+        long varlong() throws IOException {
+            long v = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = raw();
+                v |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return (v >>> 1) ^ -(v & 1);
+                }
+            }
+            throw new IOException("Corrupt varint");
+        }
+
+        String string() throws IOException {
+            int length = varint();
+            if (length < 0 || pos + length > data.length) throw new IOException("Truncated binary user snapshot");
+            String s = new String(data, pos, length, StandardCharsets.UTF_8);
+            pos += length;
+            return s;
+        }
+    }
+}
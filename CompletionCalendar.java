@@ -0,0 +1,350 @@
+package models;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Tasks, XP and coins completed per day, with prefix sums and streak lengths kept alongside,
+// so streaks and sums over any range of days are O(1). Immutable like TaskTotals: User swaps
+// in a new one whenever a task is completed. It is history, so deleting or archiving a task
+// does not take its completion back out. Snapshots store it in the header.
+//
+// Days are epoch days, stored densely from the first to the last day with a completion
+// (capped at MAX_DAYS, dropping the oldest days beyond that).
+//
+// Completing a task on the last day or a later one, which is nearly always what happens, is
+// O(1) (plus the days skipped since): the last day is kept in fields, and the days before it
+// in a History that successive calendars share, appending into spare capacity that older
+// calendars do not see. Anything else (an earlier day, a merge) builds new arrays.
+public final class CompletionCalendar {
+    public static final int MAX_DAYS = 100 * 366;
+
+    public static final CompletionCalendar EMPTY = new CompletionCalendar(0, new History(0), 0, 0, 0, 0, 0, 0);
+
+    private final long firstDay;
+    private final History history; // every day before the last
+    private final int closed;      // of which this calendar sees the first closed ones
+    private final int lastTasks;   // the last day, firstDay + closed; 0 only if empty
+    private final long lastXp;
+    private final long lastCoins;
+    private final int lastRun;     // days with completions in a row, ending at the last day
+    private final int longestStreak;
+
+    private CompletionCalendar(long firstDay, History history, int closed, int lastTasks, long lastXp,
+                               long lastCoins, int lastRun, int longestStreak) {
+        this.firstDay = firstDay;
+        this.history = history;
+        this.closed = closed;
+        this.lastTasks = lastTasks;
+        this.lastXp = lastXp;
+        this.lastCoins = lastCoins;
+        this.lastRun = lastRun;
+        this.longestStreak = longestStreak;
+    }
+
+    // Per-day values with prefix sums and runs, written day by day; each slot is written once.
+    // filled counts the days written, so only a calendar that sees all of them may append.
+    private static final class History {
+        final int[] tasks;         // per day from firstDay
+        final long[] xp;
+        final long[] coins;
+        final long[] tasksBefore;  // prefix sums: totals of the days before index i
+        final long[] xpBefore;
+        final long[] coinsBefore;
+        final long[] activeBefore; // days with a completion before index i
+        final int[] run;           // days with completions in a row, ending at this day
+        final AtomicInteger filled = new AtomicInteger();
+
+        History(int capacity) {
+            tasks = new int[capacity];
+            xp = new long[capacity];
+            coins = new long[capacity];
+            tasksBefore = new long[capacity + 1];
+            xpBefore = new long[capacity + 1];
+            coinsBefore = new long[capacity + 1];
+            activeBefore = new long[capacity + 1];
+            run = new int[capacity];
+        }
+
+        // A copy of other, with room for more; the caller sets filled
+        History(History other, int capacity) {
+            tasks = Arrays.copyOf(other.tasks, capacity);
+            xp = Arrays.copyOf(other.xp, capacity);
+            coins = Arrays.copyOf(other.coins, capacity);
+            tasksBefore = Arrays.copyOf(other.tasksBefore, capacity + 1);
+            xpBefore = Arrays.copyOf(other.xpBefore, capacity + 1);
+            coinsBefore = Arrays.copyOf(other.coinsBefore, capacity + 1);
+            activeBefore = Arrays.copyOf(other.activeBefore, capacity + 1);
+            run = Arrays.copyOf(other.run, capacity);
+        }
+
+        int capacity() {
+            return tasks.length;
+        }
+
+        // Day i, after the i days before it
+        void set(int i, int taskCount, long xpReward, long coinReward) {
+            tasks[i] = taskCount;
+            xp[i] = xpReward;
+            coins[i] = coinReward;
+            tasksBefore[i + 1] = tasksBefore[i] + taskCount;
+            xpBefore[i + 1] = xpBefore[i] + xpReward;
+            coinsBefore[i + 1] = coinsBefore[i] + coinReward;
+            activeBefore[i + 1] = activeBefore[i] + (taskCount > 0 ? 1 : 0);
+            run[i] = taskCount == 0 ? 0 : (i > 0 ? run[i - 1] : 0) + 1;
+        }
+    }
+
+    // Days from first, the last of them non-empty
+    private static CompletionCalendar build(long first, int[] tasks, long[] xp, long[] coins) {
+        int closed = tasks.length - 1;
+        History history = new History(closed + Math.max(8, closed >> 1));
+        int longest = 0;
+        for (int i = 0; i < closed; i++) {
+            history.set(i, tasks[i], xp[i], coins[i]);
+            longest = Math.max(longest, history.run[i]);
+        }
+        history.filled.set(closed);
+        int lastRun = (closed > 0 ? history.run[closed - 1] : 0) + 1;
+        return new CompletionCalendar(first, history, closed, tasks[closed], xp[closed], coins[closed],
+                lastRun, Math.max(longest, lastRun));
+    }
+
+    // From the completion dates of the tasks (for users stored before the calendar was)
+    public static CompletionCalendar of(Collection<Task> tasks) {
+        long[] days = new long[tasks.size()];
+        int[] xp = new int[tasks.size()];
+        int[] coins = new int[tasks.size()];
+        int n = 0;
+        for (Task task : tasks) {
+            if (task.isCompleted() && task.getCompletionDate() != null) {
+                days[n] = task.getCompletionDate().toEpochDay();
+                xp[n] = task.getXpReward();
+                coins[n] = task.getCoinReward();
+                n++;
+            }
+        }
+        if (n == 0) return EMPTY;
+        long first = Long.MAX_VALUE, last = Long.MIN_VALUE;
+        for (int i = 0; i < n; i++) {
+            first = Math.min(first, days[i]);
+            last = Math.max(last, days[i]);
+        }
+        Days d = new Days(Math.max(first, last - MAX_DAYS + 1), last);
+        for (int i = 0; i < n; i++) {
+            d.add(days[i], 1, xp[i], coins[i]);
+        }
+        return d.build();
+    }
+
+    // Days as stored: parallel arrays of epoch days (ascending) and their counts
+    public static CompletionCalendar of(long[] days, int[] tasks, long[] xp, long[] coins) {
+        if (days.length == 0) return EMPTY;
+        long last = Arrays.stream(days).max().getAsLong();
+        long first = Math.max(Arrays.stream(days).min().getAsLong(), last - MAX_DAYS + 1);
+        Days d = new Days(first, last);
+        for (int i = 0; i < days.length; i++) {
+            d.add(days[i], tasks[i], xp[i], coins[i]);
+        }
+        return d.build();
+    }
+
+    // One more task completed on the given day
+    public CompletionCalendar completing(LocalDate date, int xpReward, int coinReward) {
+        return plus(date.toEpochDay(), 1, xpReward, coinReward);
+    }
+
+    public CompletionCalendar plus(long day, int taskCount, long xpReward, long coinReward) {
+        if (taskCount > 0) {
+            if (isEmpty()) {
+                return new CompletionCalendar(day, new History(8), 0, taskCount, xpReward, coinReward, 1, 1);
+            }
+            if (day == lastDay()) {
+                return new CompletionCalendar(firstDay, history, closed, lastTasks + taskCount, lastXp + xpReward,
+                        lastCoins + coinReward, lastRun, longestStreak);
+            }
+            if (day > lastDay() && day - firstDay < MAX_DAYS) {
+                return appending(day, taskCount, xpReward, coinReward);
+            }
+        }
+        Days d = resized(Math.min(day, firstDay()), Math.max(day, lastDay()));
+        d.add(day, taskCount, xpReward, coinReward);
+        return d.build();
+    }
+
+    // A new last day: the current one and the empty days up to the new one join the history
+    private CompletionCalendar appending(long day, int taskCount, long xpReward, long coinReward) {
+        int days = (int) (day - firstDay);
+        History h = history;
+        if (days > h.capacity() || !h.filled.compareAndSet(closed, days)) {
+            // Full, or another calendar already appended its own days here
+            h = new History(h, Math.max(days, h.capacity() + (h.capacity() >> 1)));
+            h.filled.set(days);
+        }
+        h.set(closed, lastTasks, lastXp, lastCoins);
+        for (int i = closed + 1; i < days; i++) {
+            h.set(i, 0, 0, 0);
+        }
+        int run = day == lastDay() + 1 ? lastRun + 1 : 1;
+        return new CompletionCalendar(firstDay, h, days, taskCount, xpReward, coinReward, run,
+                Math.max(longestStreak, run));
+    }
+
+    // Every day of both
+    public CompletionCalendar plus(CompletionCalendar other) {
+        if (other.isEmpty()) return this;
+        if (isEmpty()) return other;
+        if (other.firstDay >= lastDay()) {
+            // Days on top of ours, as a merge adding what another session completed since usually has
+            CompletionCalendar sum = this;
+            for (long day = other.firstDay; day <= other.lastDay(); day++) {
+                int taskCount = other.getTasks(day);
+                if (taskCount > 0) sum = sum.plus(day, taskCount, other.getXp(day), other.getCoins(day));
+            }
+            return sum;
+        }
+        Days d = resized(Math.min(firstDay, other.firstDay), Math.max(lastDay(), other.lastDay()));
+        for (long day = other.firstDay; day <= other.lastDay(); day++) {
+            d.add(day, other.getTasks(day), other.getXp(day), other.getCoins(day));
+        }
+        return d.build();
+    }
+
+    // What this has on top of base, day by day (what one session added to a shared starting point)
+    public CompletionCalendar since(CompletionCalendar base) {
+        if (isEmpty()) return this;
+        Days d = new Days(firstDay, lastDay());
+        for (long day = firstDay; day <= lastDay(); day++) {
+            int extra = getTasks(day) - base.getTasks(day);
+            if (extra > 0) {
+                d.add(day, extra, Math.max(0, getXp(day) - base.getXp(day)), Math.max(0, getCoins(day) - base.getCoins(day)));
+            }
+        }
+        return d.build();
+    }
+
+    private Days resized(long first, long last) {
+        Days d = new Days(Math.max(first, last - MAX_DAYS + 1), last);
+        for (long day = firstDay(); day <= lastDay(); day++) {
+            d.add(day, getTasks(day), getXp(day), getCoins(day));
+        }
+        return d;
+    }
+
+    public boolean isEmpty() {
+        return lastTasks == 0;
+    }
+
+    // Epoch day of the first and last day with a completion; only meaningful if not empty
+    public long firstDay() {
+        return isEmpty() ? Long.MAX_VALUE : firstDay;
+    }
+
+    public long lastDay() {
+        return isEmpty() ? Long.MIN_VALUE : firstDay + closed;
+    }
+
+    public int getTasks(long day) {
+        int i = index(day);
+        return i < 0 ? 0 : i < closed ? history.tasks[i] : lastTasks;
+    }
+
+    public long getXp(long day) {
+        int i = index(day);
+        return i < 0 ? 0 : i < closed ? history.xp[i] : lastXp;
+    }
+
+    public long getCoins(long day) {
+        int i = index(day);
+        return i < 0 ? 0 : i < closed ? history.coins[i] : lastCoins;
+    }
+
+    // Sums over the days from..to, both included
+    public long getTasks(long from, long to) {
+        return sum(history.tasksBefore, lastTasks, from, to);
+    }
+
+    public long getXp(long from, long to) {
+        return sum(history.xpBefore, lastXp, from, to);
+    }
+
+    public long getCoins(long from, long to) {
+        return sum(history.coinsBefore, lastCoins, from, to);
+    }
+
+    // Days with a completion among from..to
+    public int getActiveDays(long from, long to) {
+        return (int) sum(history.activeBefore, 1, from, to);
+    }
+
+    public int getActiveDays() {
+        return isEmpty() ? 0 : (int) history.activeBefore[closed] + 1;
+    }
+
+    // Days in a row with a completion up to today; a streak still counts on the day after
+    // its last completion, so it is not broken before today is over
+    public int getCurrentStreak(long today) {
+        int i = index(today);
+        if (i >= 0 && run(i) > 0) return run(i);
+        i = index(today - 1);
+        return i >= 0 ? run(i) : 0;
+    }
+
+    public int getLongestStreak() {
+        return longestStreak;
+    }
+
+    private int run(int i) {
+        return i < closed ? history.run[i] : lastRun;
+    }
+
+    private int index(long day) {
+        long i = day - firstDay;
+        return !isEmpty() && i >= 0 && i <= closed ? (int) i : -1;
+    }
+
+    // Sum over from..to of a column, given its prefix sums and its value on the last day
+    private long sum(long[] before, long last, long from, long to) {
+        if (isEmpty() || to < from) return 0;
+        long start = Math.max(from - firstDay, 0);
+        long end = Math.min(to - firstDay + 1, closed + 1);
+        if (end <= start) return 0;
+        long sum = before[(int) Math.min(end, closed)] - before[(int) start];
+        return end > closed ? sum + last : sum;
+    }
+
+    // Mutable per-day arrays for building the next calendar; days outside first..last are dropped
+    private static final class Days {
+        final long first;
+        final int[] tasks;
+        final long[] xp;
+        final long[] coins;
+
+        Days(long first, long last) {
+            this.first = first;
+            int days = last < first ? 0 : (int) (last - first + 1);
+            this.tasks = new int[days];
+            this.xp = new long[days];
+            this.coins = new long[days];
+        }
+
+        void add(long day, int taskCount, long xpReward, long coinReward) {
+            long i = day - first;
+            if (i < 0 || i >= tasks.length) return;
+            tasks[(int) i] += taskCount;
+            xp[(int) i] += xpReward;
+            coins[(int) i] += coinReward;
+        }
+
+        CompletionCalendar build() {
+            // Trim days without completions at either end
+            int start = 0, end = tasks.length;
+            while (start < end && tasks[start] == 0) start++;
+            while (end > start && tasks[end - 1] == 0) end--;
+            if (start == end) return EMPTY;
+            return CompletionCalendar.build(first + start, Arrays.copyOfRange(tasks, start, end),
+                    Arrays.copyOfRange(xp, start, end), Arrays.copyOfRange(coins, start, end));
+        }
+    }
+}
@@ -0,0 +1,170 @@
+//util->CredentialStore
+package util;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// In-memory index of users.json. The file is parsed once and only re-read when its
+// modification time or size changes, so lookups don't depend on the number of accounts.
+// Passwords are stored as salted PBKDF2 hashes; plaintext entries written by older
+// versions are upgraded the first time the user signs in.
+public class CredentialStore {
+    private static final String HASH_PREFIX = "pbkdf2$";
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final int ITERATIONS = 65536;
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+
+    private static final Gson gson = new GsonBuilder().disableHtmlEscaping().create();
+    private static final SecureRandom random = new SecureRandom();
+
+    private final File file;
+    private Map<String, String> credentials = new HashMap<>();
+    private long loadedModified = -1;
+    private long loadedLength = -1;
+
+    public CredentialStore(File file) {
+        this.file = file;
+    }
+
+    public synchronized boolean contains(String username) {
+        refreshIfChanged();
+        return credentials.containsKey(username);
+    }
+
+    public synchronized boolean verify(String username, String password) {
+        refreshIfChanged();
+        String stored = credentials.get(username);
+        if (stored == null) return false;
+
+        boolean matches = checkPassword(stored, password);
+        if (matches && !isHashed(stored)) {
+            // Upgrade the legacy plaintext entry
+            credentials.put(username, hashPassword(password));
+            save();
+        }
+        return matches;
+    }
+
+    public synchronized void put(String username, String password) {
+        putHash(username, hashPassword(password));
+    }
+
+    public synchronized String getHash(String username) {
+        refreshIfChanged();
+        return credentials.get(username);
+    }
+
+    public synchronized void putHash(String username, String hash) {
+        putHashes(Map.of(username, hash));
+    }
+
+    // Several at once with a single rewrite of users.json (imports)
+    public synchronized void putHashes(Map<String, String> hashes) {
+        if (hashes.isEmpty()) return;
+        refreshIfChanged();
+        credentials.putAll(hashes);
+        save();
+    }
+
+    public synchronized List<String> usernames() {
+        refreshIfChanged();
+        return new ArrayList<>(credentials.keySet());
+    }
+
+    // Forces the next lookup to re-read users.json
+    public synchronized void invalidate() {
+        loadedModified = -1;
+        loadedLength = -1;
+    }
+
+    private void refreshIfChanged() {
+        long modified = file.lastModified();
+        long length = file.length();
+        if (modified == loadedModified && length == loadedLength) return;
+
+        credentials = load();
+        loadedModified = modified;
+        loadedLength = length;
+    }
+
+    private Map<String, String> load() {
+        if (!SnapshotFiles.exists(file)) return new HashMap<>();
+        try {
+            byte[] data = SnapshotFiles.read(file);
+            if (data == null) return new HashMap<>();
+            Type type = new TypeToken<Map<String, String>>() {}.getType();
+            Map<String, String> map = gson.fromJson(new String(data, StandardCharsets.UTF_8), type);
+            return map != null ? new HashMap<>(map) : new HashMap<>();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return new HashMap<>();
+        }
+    }
+
+    private void save() {
+        try {
+            SnapshotFiles.write(file, gson.toJson(credentials).getBytes(StandardCharsets.UTF_8));
+            loadedModified = file.lastModified();
+            loadedLength = file.length();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Encodes a password as "pbkdf2$<iterations>$<salt>$<hash>"; shared with the other stores
+    public static String hashPassword(String password) {
+        byte[] salt = new byte[SALT_BYTES];
+        random.nextBytes(salt);
+        Base64.Encoder encoder = Base64.getEncoder();
+        return HASH_PREFIX + ITERATIONS + "$" + encoder.encodeToString(salt) + "$"
+                + encoder.encodeToString(pbkdf2(password, salt, ITERATIONS));
+    }
+
+    // False for a legacy plaintext entry
+    public static boolean isHashed(String stored) {
+        return stored.startsWith(HASH_PREFIX);
+    }
+
+    // Constant-time check against a hashed or legacy plaintext entry
+    public static boolean checkPassword(String stored, String password) {
+        if (!isHashed(stored)) {
+            return MessageDigest.isEqual(stored.getBytes(StandardCharsets.UTF_8),
+                    password.getBytes(StandardCharsets.UTF_8));
+        }
+
+        String[] parts = stored.split("\\$");
+        if (parts.length != 4) return false;
+        int iterations = Integer.parseInt(parts[1]);
+        byte[] salt = Base64.getDecoder().decode(parts[2]);
+        byte[] expected = Base64.getDecoder().decode(parts[3]);
+        return MessageDigest.isEqual(expected, pbkdf2(password, salt, iterations));
+    }
+
+    private static byte[] pbkdf2(String password, byte[] salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Password hashing unavailable", e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+}
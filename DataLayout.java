@@ -0,0 +1,156 @@
+//util->DataLayout
+package util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
+
+// Where user files live under data/. Users are spread over 256 subdirectories named after
+// a hash of the username (data/3f/alice.json), so no single directory grows with the
+// user base. Files from the old flat layout (data/alice.json) are moved into their
+// shard the first time they are touched.
+public class DataLayout {
+    private static final int SHARDS = 256;
+    private static final String SNAPSHOT_SUFFIX = ".json";
+    private static final String JOURNAL_SUFFIX = ".journal";
+    private static final String LOCK_SUFFIX = ".lock";
+    // Everything that belongs to one user and has to move together
+    private static final String[] USER_FILE_SUFFIXES = {
+            SNAPSHOT_SUFFIX, SNAPSHOT_SUFFIX + ".bak", SNAPSHOT_SUFFIX + ".tmp", JOURNAL_SUFFIX
+    };
+
+    private final File root;
+    private final String reservedName; // users.json lives in the root and is not a user
+    // Users already checked for flat files; lookups for them skip the lock and the stats
+    private final Set<String> migrated = ConcurrentHashMap.newKeySet();
+
+    public DataLayout(File root, String reservedName) {
+        this.root = root;
+        this.reservedName = reservedName;
+    }
+
+    public File root() {
+        return root;
+    }
+
+    public String reservedName() {
+        return reservedName;
+    }
+
+    public File userFile(String username) {
+        ensureMigrated(username);
+        return new File(shardDir(username), username + SNAPSHOT_SUFFIX);
+    }
+
+    public File journalFile(String username) {
+        ensureMigrated(username);
+        return new File(shardDir(username), username + JOURNAL_SUFFIX);
+    }
+
+    // The user a snapshot, backup or journal file belongs to; null for any other file name
+    public String usernameOf(String fileName) {
+        if (fileName.equals(reservedName)) return null;
+        for (String suffix : new String[]{SNAPSHOT_SUFFIX, SNAPSHOT_SUFFIX + ".bak", JOURNAL_SUFFIX}) {
+            if (fileName.endsWith(suffix) && fileName.length() > suffix.length()) {
+                return fileName.substring(0, fileName.length() - suffix.length());
+            }
+        }
+        return null;
+    }
+
+    // Held while a process checks and writes the user; never moved or deleted
+    public File lockFile(String username) {
+        return new File(shardDir(username), username + LOCK_SUFFIX);
+    }
+
+    public File shardDir(String username) {
+        CRC32 crc = new CRC32();
+        crc.update(username.getBytes(StandardCharsets.UTF_8));
+        return new File(root, String.format("%02x", crc.getValue() % SHARDS));
+    }
+
+    // Scans all shard directories in parallel and returns every username with a snapshot
+    public List<String> listUsernames() {
+        List<String> names = IntStream.range(0, SHARDS).parallel()
+                .mapToObj(i -> new File(root, String.format("%02x", i)).toPath())
+                .flatMap(dir -> listSnapshots(dir).stream())
+                .collect(Collectors.toCollection(ArrayList::new));
+        // Users not migrated out of the flat layout yet
+        Set<String> seen = new HashSet<>(names);
+        for (String name : listSnapshots(root.toPath())) {
+            if (seen.add(name)) names.add(name);
+        }
+        Collections.sort(names);
+        return names;
+    }
+
+    // Moves every user still in the flat layout into its shard; returns how many moved
+    public int migrateAll() {
+        int moved = 0;
+        for (String username : listSnapshots(root.toPath())) {
+            if (migrateFlat(username)) moved++;
+            migrated.add(username);
+        }
+        return moved;
+    }
+
+    private void ensureMigrated(String username) {
+        if (migrated.contains(username)) return;
+        migrateFlat(username);
+        migrated.add(username);
+    }
+
+    private synchronized boolean migrateFlat(String username) {
+        File flat = new File(root, username + SNAPSHOT_SUFFIX);
+        File flatBak = new File(root, username + SNAPSHOT_SUFFIX + ".bak");
+        if (!flat.exists() && !flatBak.exists()) return false;
+        if (reservedName.equals(flat.getName())) return false;
+
+        File shard = shardDir(username);
+        File sharded = new File(shard, username + SNAPSHOT_SUFFIX);
+        if (sharded.exists()) return false;
+
+        shard.mkdirs();
+        try {
+            for (String suffix : USER_FILE_SUFFIXES) {
+                Path from = new File(root, username + suffix).toPath();
+                if (Files.exists(from)) {
+                    Files.move(from, new File(shard, username + suffix).toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            System.out.println("Moved " + username + " into shard " + shard.getName());
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    private List<String> listSnapshots(Path dir) {
+        List<String> names = new ArrayList<>();
+        if (!Files.isDirectory(dir)) return names;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*" + SNAPSHOT_SUFFIX)) {
+            for (Path path : stream) {
+                String fileName = path.getFileName().toString();
+                if (fileName.equals(reservedName)) continue;
+                names.add(fileName.substring(0, fileName.length() - SNAPSHOT_SUFFIX.length()));
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return names;
+    }
+}
@@ -1,112 +1,384 @@
 //util->DataManager
 package util;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.JsonDeserializationContext;
-import com.google.gson.JsonDeserializer;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonParseException;
-import com.google.gson.JsonPrimitive;
-import com.google.gson.JsonSerializationContext;
-import com.google.gson.JsonSerializer;
-import com.google.gson.reflect.TypeToken;
+import models.Task;
 import models.User;
+import models.UserBaseline;
+import models.UserHeader;
 
-import java.io.*;
-import java.lang.reflect.Type;
-import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
-import java.util.HashMap;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 public class DataManager {
     private static final String USER_DIR = "data/";
-    private static final String PASSWORD_FILE = USER_DIR + "users.json";
 
-    // Add custom serializer/deserializer for LocalDate
-    private static final Gson gson = new GsonBuilder()
-        .setPrettyPrinting()
-        .registerTypeAdapter(LocalDate.class, new LocalDateAdapter())
-        .create();
+    // Storage engine, chosen with -Dstudyleveling.storage=json (default), memory, file or mapped
+    private static final UserRepository repository = createRepository(System.getProperty("studyleveling.storage", "json"));
 
-    private static Map<String, String> userPasswords = loadPasswordMap();
+    // Write-behind queue: users marked dirty by saveUser or a journal record, written by the
+    // background flusher. Keyed by instance so repeated saves of the same User coalesce, while
+    // two live instances of one account (e.g. the main menu's and a multiplayer session's copy)
+    // are written one after the other, the second merged onto the first like any conflict.
+    private static final Map<User, PendingWrite> dirtyUsers = new LinkedHashMap<>();
+    private static final Object writeLock = new Object();
+    // Conflicting saves merged in a row before a write is put back for the next flush
+    private static final int MAX_SAVE_ATTEMPTS = 5;
+    private static long flushIntervalMillis = Long.getLong("studyleveling.flushIntervalMs", 2000L);
+    private static final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "DataManager-flusher");
+        t.setDaemon(true);
+        return t;
+    });
+    private static ScheduledFuture<?> flushTask;
 
-    static {
-        File dir = new File(USER_DIR);
-        if (!dir.exists()) dir.mkdirs();
-    }
+    // Saves are optimistic: each User instance remembers the state it was loaded or last saved
+    // with (stats and task ids, see UserBaseline), and a save that finds a newer version stored (another instance or process saved
+    // the same user) is rebased onto it by the merger instead of overwriting it.
+    private static final Map<User, UserBaseline> baselines = Collections.synchronizedMap(new WeakHashMap<>());
+    private static UserMerger merger = new DeltaUserMerger();
+
+    // Completed tasks older than this many days move from the snapshot into data/archive/ on load
+    private static final TaskArchive archive = new TaskArchive(new File(USER_DIR, "archive"),
+            Integer.getInteger("studyleveling.archiveAfterDays", 30));
 
-    // Custom adapter for LocalDate serialization/deserialization
-    private static class LocalDateAdapter implements JsonSerializer<LocalDate>, JsonDeserializer<LocalDate> {
-        private final DateTimeFormatter formatter = DateTimeFormatter.ISO_LOCAL_DATE;
+    // Screens interested in users changed outside this app (another instance, a restore)
+    private static final List<UserChangeListener> changeListeners = new CopyOnWriteArrayList<>();
+    // Set once the repository is asked for changes, which starts its watcher; tools that never
+    // listen (the command line, import and export) do not start one
+    private static boolean watching;
 
-        @Override
-        public JsonElement serialize(LocalDate src, Type typeOfSrc, JsonSerializationContext context) {
-            return src == null ? null : new JsonPrimitive(formatter.format(src));
+    // What a flush has to do for one user: rewrite the snapshot, or just append journal records
+    private static class PendingWrite {
+        final User user;
+        boolean snapshot;
+        boolean overwrite;
+        final List<TaskJournal.Record> records = new ArrayList<>();
+
+        PendingWrite(User user) {
+            this.user = user;
         }
+    }
 
-        @Override
-        public LocalDate deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context)
-                throws JsonParseException {
-            return json == null || json.isJsonNull() ? null : LocalDate.parse(json.getAsString(), formatter);
+    static {
+        scheduleFlushes();
+        // Make sure nothing queued is lost when the app exits
+        Runtime.getRuntime().addShutdownHook(new Thread(DataManager::flush, "DataManager-shutdown-flush"));
+    }
+
+    private static UserRepository createRepository(String storage) {
+        switch (storage.toLowerCase()) {
+            case "memory":
+                return new InMemoryUserRepository();
+            case "file":
+                return new SingleFileUserRepository(new File(USER_DIR, "users.db"));
+            case "mapped":
+                return new MappedUserRepository(new File(USER_DIR, "users.mdb"));
+            case "json":
+                return new JsonFileUserRepository(new File(USER_DIR));
+            default:
+                System.out.println("Unknown storage '" + storage + "', using json");
+                return new JsonFileUserRepository(new File(USER_DIR));
         }
     }
 
+    public static UserRepository getRepository() {
+        return repository;
+    }
+
+    public static TaskArchive getArchive() {
+        return archive;
+    }
+
     public static User loadUser(String username) {
-        File file = new File(USER_DIR + username + ".json");
-        if (!file.exists()) return null;
+        // A pending write for this user is newer than what is stored
+        flushUser(username);
 
-        try (FileReader reader = new FileReader(file)) {
-            User user = gson.fromJson(reader, User.class);
+        User user = repository.load(username);
+        if (user != null) {
+            baselines.put(user, user.getBaseline());
+            archiveOldTasks(user);
             System.out.println("Loaded user: " + username + " (XP: " + user.getXp() + ", Level: " + user.getLevel() + ", Coins: " + user.getCoins() + ")");
-            return user;
-        } catch (IOException e) {
-            e.printStackTrace();
-            return null;
         }
+        return user;
+    }
+
+    // Loads several users in one call; missing users are left out of the result
+    public static Map<String, User> loadUsers(Collection<String> usernames) {
+        for (String username : usernames) {
+            flushUser(username);
+        }
+        Map<String, User> users = repository.loadAll(usernames);
+        for (User user : users.values()) {
+            baselines.put(user, user.getBaseline());
+            archiveOldTasks(user);
+        }
+        return users;
+    }
+
+    // Just username, XP, level, coins and counters, without reading the user's tasks.
+    // For listing and ranking; nothing is archived and the result cannot be saved.
+    public static UserHeader loadUserHeader(String username) {
+        flushUser(username);
+        return repository.loadHeader(username);
     }
 
+    public static Map<String, UserHeader> loadUserHeaders(Collection<String> usernames) {
+        for (String username : usernames) {
+            flushUser(username);
+        }
+        return repository.loadHeaders(usernames);
+    }
+
+    // Written right away: until the snapshot without them is saved, the archived tasks are in
+    // both places (the next load finishes such a run rather than archiving them again)
+    private static void archiveOldTasks(User user) {
+        if (archive.archiveOld(user)) {
+            saveUser(user);
+            flushUser(user.getUsername());
+        }
+    }
+
+    // Every saved username; for the default store the shard directories are scanned in parallel
+    public static List<String> listUsernames() {
+        return repository.listUsers();
+    }
+
+    // Marks the whole user dirty; the actual write happens on the flusher thread.
+    // Several saves of the same user before the next flush result in one write.
     public static void saveUser(User user) {
-        try (FileWriter writer = new FileWriter(USER_DIR + user.getUsername() + ".json")) {
-            gson.toJson(user, writer);
-            System.out.println("Saved user: " + user.getUsername() + " (XP: " + user.getXp() + ", Level: " + user.getLevel() + ", Coins: " + user.getCoins() + ")");
-        } catch (IOException e) {
-            e.printStackTrace();
+        synchronized (dirtyUsers) {
+            PendingWrite pending = dirtyUsers.computeIfAbsent(user, PendingWrite::new);
+            pending.snapshot = true;
+            pending.overwrite = false; // only overwriteUser asks for it, for the state it was given
+            pending.records.clear(); // the snapshot already contains them
         }
     }
 
-    public static void savePassword(String username, String password) {
-        userPasswords.put(username, password);
-        savePasswordMap();
+    // saveUser for callers that have already reconciled this instance with the stored user
+    // themselves: if the stored user changed since, it is overwritten instead of merged
+    public static void overwriteUser(User user) {
+        synchronized (dirtyUsers) {
+            saveUser(user);
+            dirtyUsers.get(user).overwrite = true;
+        }
     }
 
-    public static boolean userExists(String username) {
-        return loadPasswordMap().containsKey(username);
+    // Called on a background thread; see UserChangeListener
+    public static void addChangeListener(UserChangeListener listener) {
+        changeListeners.add(listener);
+        synchronized (changeListeners) {
+            if (watching) return;
+            watching = true;
+        }
+        repository.addChangeListener(username -> {
+            for (UserChangeListener changeListener : changeListeners) {
+                changeListener.userChanged(username);
+            }
+        });
     }
 
-    public static boolean verifyPassword(String username, String input) {
-        String savedPassword = loadPasswordMap().get(username);
-        return input.equals(savedPassword);
+    public static void removeChangeListener(UserChangeListener listener) {
+        changeListeners.remove(listener);
     }
 
-    private static Map<String, String> loadPasswordMap() {
-        File file = new File(PASSWORD_FILE);
-        if (!file.exists()) return new HashMap<>();
-        try (FileReader reader = new FileReader(file)) {
-            Type type = new TypeToken<Map<String, String>>() {}.getType();
-            return gson.fromJson(reader, type);
-        } catch (IOException e) {
-            e.printStackTrace();
-            return new HashMap<>();
+    // Brings a loaded user up to date with what is stored, e.g. after a change listener fired.
+    // Queued changes are written first and unsaved ones are kept (merged like a conflicting save);
+    // tasks that did not change stay the same objects. Returns true if the user changed.
+    public static boolean refreshUser(User user) {
+        flushUser(user.getUsername());
+        synchronized (writeLock) {
+            User stored = repository.load(user.getUsername());
+            if (stored == null || stored.getVersion() == user.getVersion()) return false;
+            merger.merge(baselines.get(user), user, stored);
+            baselines.put(user, stored.getBaseline());
+            return true;
         }
     }
 
-    private static void savePasswordMap() {
-        try (FileWriter writer = new FileWriter(PASSWORD_FILE)) {
-            gson.toJson(userPasswords, writer);
-        } catch (IOException e) {
-            e.printStackTrace();
+    public static void setMerger(UserMerger userMerger) {
+        merger = userMerger;
+    }
+
+    // Journal variants of saveUser: the change is appended to the user's journal instead of
+    // rewriting the whole snapshot (stores without a journal still write the whole user).
+    // Call them right after applying the change to the user.
+    public static void recordTaskAdded(User user, Task task) {
+        record(user, TaskJournal.taskAdded(task));
+    }
+
+    public static void recordTaskCompleted(User user, Task task) {
+        record(user, TaskJournal.taskCompleted(task));
+    }
+
+    public static void recordTaskDeleted(User user, Task task) {
+        record(user, TaskJournal.taskDeleted(task));
+    }
+
+    public static void recordCoinsSpent(User user, int amount) {
+        record(user, TaskJournal.coinsSpent(amount));
+    }
+
+    private static void record(User user, TaskJournal.Record record) {
+        synchronized (dirtyUsers) {
+            record.seq = user.nextJournalSequence();
+            PendingWrite pending = dirtyUsers.computeIfAbsent(user, PendingWrite::new);
+            if (!pending.snapshot) {
+                pending.records.add(record);
+            }
+        }
+    }
+
+    // Writes every queued user now, on the calling thread
+    public static void flush() {
+        List<PendingWrite> pending;
+        synchronized (dirtyUsers) {
+            pending = new ArrayList<>(dirtyUsers.values());
+            dirtyUsers.clear();
+        }
+        for (PendingWrite write : pending) {
+            write(write);
+        }
+    }
+
+    // Schedules an immediate flush on the background thread (e.g. when a window closes)
+    public static void requestFlush() {
+        flusher.execute(DataManager::flush);
+    }
+
+    // Blocks until the queue has been drained (by the flusher or by another thread)
+    public static boolean awaitFlushed(long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (true) {
+            synchronized (dirtyUsers) {
+                if (dirtyUsers.isEmpty()) break;
+            }
+            if (System.currentTimeMillis() >= deadline) return false;
+            Thread.sleep(10);
+        }
+        // Wait for a write that was already taken off the queue to finish
+        synchronized (writeLock) {
+            return true;
+        }
+    }
+
+    public static void setFlushInterval(long millis) {
+        flushIntervalMillis = millis;
+        scheduleFlushes();
+    }
+
+    private static synchronized void scheduleFlushes() {
+        if (flushTask != null) flushTask.cancel(false);
+        flushTask = flusher.scheduleWithFixedDelay(DataManager::flush,
+                flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private static void flushUser(String username) {
+        List<PendingWrite> pending = new ArrayList<>();
+        synchronized (dirtyUsers) {
+            Iterator<PendingWrite> it = dirtyUsers.values().iterator();
+            while (it.hasNext()) {
+                PendingWrite write = it.next();
+                if (write.user.getUsername().equals(username)) {
+                    pending.add(write);
+                    it.remove();
+                }
+            }
         }
+        if (!pending.isEmpty()) {
+            for (PendingWrite write : pending) {
+                write(write);
+            }
+        } else {
+            // The flusher may be in the middle of writing this user
+            synchronized (writeLock) { }
+        }
+    }
+
+    // A write that fails (a store error, or losing this many races in a row) goes back on the
+    // queue for the next flush; nothing may escape, or the scheduled flushes would stop
+    private static void write(PendingWrite pending) {
+        synchronized (writeLock) {
+            User user = pending.user;
+            try {
+                if (!save(pending)) {
+                    System.out.println("⚠ " + user.getUsername() + " kept changing while being saved, retrying later");
+                    requeue(pending);
+                    return;
+                }
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+                System.out.println("❌ Could not save " + user.getUsername() + ", retrying later");
+                requeue(pending);
+                return;
+            }
+            baselines.put(user, user.getBaseline());
+            User.Stats stats = user.getStats();
+            System.out.println("Saved user: " + user.getUsername() + " (XP: " + stats.getXp() + ", Level: " + stats.getLevel() + ", Coins: " + stats.getCoins() + ")");
+        }
+    }
+
+    // One attempt at a pending write, merging with (or overwriting) newer stored versions;
+    // false if another save got in first every time
+    private static boolean save(PendingWrite pending) {
+        User user = pending.user;
+        for (int attempt = 0; attempt < MAX_SAVE_ATTEMPTS; attempt++) {
+            if (repository.saveIfUnchanged(user, pending.snapshot ? null : pending.records)) return true;
+            User stored = repository.load(user.getUsername());
+            if (pending.overwrite) {
+                user.setVersion(stored != null ? stored.getVersion() : 0);
+            } else {
+                System.out.println("⚠ " + user.getUsername() + " was saved elsewhere, merging changes");
+                merger.merge(baselines.get(user), user, stored);
+                // Our changes are now relative to what we merged with, should we lose again
+                if (stored != null) baselines.put(user, stored.getBaseline());
+            }
+            // Journal records were relative to our old state; write the merged snapshot
+            pending.snapshot = true;
+            pending.records.clear();
+        }
+        return false;
+    }
+
+    // Puts a failed write back, combined with anything queued for the same instance meanwhile
+    private static void requeue(PendingWrite failed) {
+        synchronized (dirtyUsers) {
+            PendingWrite newer = dirtyUsers.get(failed.user);
+            if (newer == null) {
+                dirtyUsers.put(failed.user, failed);
+                return;
+            }
+            if (newer.snapshot) return; // the newer snapshot contains the failed changes too
+            if (failed.snapshot) {
+                newer.snapshot = true;
+                newer.records.clear();
+            } else {
+                newer.records.addAll(0, failed.records);
+            }
+            newer.overwrite |= failed.overwrite;
+        }
+    }
+
+    public static void savePassword(String username, String password) {
+        repository.savePassword(username, password);
+    }
+
+    public static boolean userExists(String username) {
+        return repository.exists(username);
+    }
+
+    public static boolean verifyPassword(String username, String input) {
+        return repository.verifyPassword(username, input);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,55 @@
+//util->DataMigration
+package util;
+
+import java.io.File;
+import java.io.IOException;
+
+// Command-line entry point for one-off data conversions, run with the app closed:
+//   java util.DataMigration binary
+//   java util.DataMigration shard
+//   java util.DataMigration export backup.ndjson.gz
+//   java util.DataMigration import backup.ndjson.gz
+// export/import work on the store picked with -Dstudyleveling.storage, like the app.
+public class DataMigration {
+    public static void main(String[] args) {
+        String command = args.length > 0 ? args[0] : "";
+        JsonFileUserRepository repository = new JsonFileUserRepository(new File("data/"));
+        switch (command) {
+            case "binary":
+                int migrated = repository.migrateAllToBinary();
+                System.out.println("✅ Converted " + migrated + " user(s) to the binary format.");
+                break;
+            case "shard":
+                int moved = repository.migrateAllToShards();
+                System.out.println("✅ Moved " + moved + " user(s) into shard directories.");
+                break;
+            case "export":
+            case "import":
+                if (args.length < 2) {
+                    System.out.println("Usage: java util.DataMigration " + command + " <file>");
+                    break;
+                }
+                transfer(command, new File(args[1]));
+                break;
+            default:
+                System.out.println("Usage: java util.DataMigration binary|shard|export <file>|import <file>");
+        }
+    }
+
+    private static void transfer(String command, File file) {
+        UserExport export = new UserExport(DataManager.getRepository(), DataManager.getArchive());
+        long start = System.currentTimeMillis();
+        try {
+            if (command.equals("export")) {
+                int exported = export.exportTo(file);
+                System.out.println("✅ Exported " + exported + " user(s) to " + file + " in " + (System.currentTimeMillis() - start) + " ms.");
+            } else {
+                int imported = export.importFrom(file);
+                System.out.println("✅ Imported " + imported + " user(s) from " + file + " in " + (System.currentTimeMillis() - start) + " ms.");
+            }
+        } catch (IOException e) {
+            System.out.println("❌ " + command + " failed: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+}
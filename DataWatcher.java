@@ -0,0 +1,120 @@
+//util->DataWatcher
+package util;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+// Watches a directory and its immediate subdirectories (data/ and the shard directories)
+// for files created, changed or deleted by anyone, this process included. Events are
+// collected until the directory has been quiet for a moment, so a snapshot write (temp
+// file, backup, rename) is reported once per file, on the "DataWatcher" thread.
+public class DataWatcher implements Closeable {
+    private static final long QUIET_MILLIS = 100;
+
+    private final Path root;
+    private final WatchService service;
+    private final Consumer<Path> onChange;
+    private final Runnable onOverflow;
+
+    // onOverflow runs when events were lost and anything may have changed
+    public DataWatcher(File root, Consumer<Path> onChange, Runnable onOverflow) throws IOException {
+        root.mkdirs();
+        this.root = root.toPath();
+        this.service = this.root.getFileSystem().newWatchService();
+        this.onChange = onChange;
+        this.onOverflow = onOverflow;
+
+        register(this.root);
+        try (DirectoryStream<Path> dirs = Files.newDirectoryStream(this.root, Files::isDirectory)) {
+            for (Path dir : dirs) {
+                register(dir);
+            }
+        }
+
+        Thread thread = new Thread(this::run, "DataWatcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void close() throws IOException {
+        service.close();
+    }
+
+    private void register(Path dir) throws IOException {
+        dir.register(service, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                WatchKey key = service.take();
+                Set<Path> changed = new LinkedHashSet<>();
+                boolean overflow = false;
+                while (key != null) {
+                    Path dir = (Path) key.watchable();
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == OVERFLOW) {
+                            overflow = true;
+                            continue;
+                        }
+                        Path path = dir.resolve((Path) event.context());
+                        if (event.kind() == ENTRY_CREATE && dir.equals(root) && Files.isDirectory(path)) {
+                            newDirectory(path, changed);
+                        } else {
+                            changed.add(path);
+                        }
+                    }
+                    key.reset();
+                    // Pick up the rest of the burst before reporting anything
+                    key = service.poll(QUIET_MILLIS, TimeUnit.MILLISECONDS);
+                }
+                if (overflow) {
+                    dispatch(onOverflow);
+                }
+                for (Path path : changed) {
+                    dispatch(() -> onChange.accept(path));
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Closed; nothing more to watch
+        }
+    }
+
+    // A new shard directory; files may have landed in it before it was registered
+    private void newDirectory(Path dir, Set<Path> changed) {
+        try {
+            register(dir);
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+                for (Path file : files) {
+                    changed.add(file);
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static void dispatch(Runnable callback) {
+        try {
+            callback.run();
+        } catch (RuntimeException e) {
+            // A failing listener must not stop the watcher
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,96 @@
+//util->DeltaUserMerger
+package util;
+
+import models.CompletionCalendar;
+import models.Task;
+import models.User;
+import models.UserBaseline;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Default merge: replays what changed in `mine` since `base` on top of the stored user.
+// XP is merged as total XP earned (so level-ups and their coin bonus happen again on the
+// stored level), coins, the completed-task counter and the completions per day as plain
+// deltas. Tasks are matched by id: the stored list, minus the tasks deleted here, with the
+// ones completed on either side completed, plus the tasks added here in our order.
+public class DeltaUserMerger implements UserMerger {
+    private static final int LEVEL_UP_BONUS = 50; // see User.addXP
+
+    @Override
+    public void merge(UserBaseline base, User mine, User stored) {
+        if (stored == null) {
+            mine.setVersion(0);
+            return;
+        }
+        UserBaseline from = base != null ? base : new User(mine.getUsername()).getBaseline();
+        User.Stats storedStats = stored.getStats();
+        CompletionCalendar storedCalendar = stored.getCompletionCalendar();
+        List<Task> storedTasks = stored.getTaskSnapshot();
+
+        mine.applyMerge(
+                current -> mergeStats(from.getStats(), current, storedStats, mine.getUsername()),
+                current -> storedCalendar.plus(current.since(from.getCompletionCalendar())),
+                current -> mergeTasks(from, current, storedTasks));
+        mine.setJournalSequence(Math.max(mine.getJournalSequence(), stored.getJournalSequence()));
+        mine.setArchivedSegments(Math.max(mine.getArchivedSegments(), stored.getArchivedSegments()));
+        mine.setVersion(stored.getVersion());
+    }
+
+    private static User.Stats mergeStats(User.Stats base, User.Stats mine, User.Stats stored, String username) {
+        long xpGained = mine.getTotalXp() - base.getTotalXp();
+        int coinsGained = (mine.getCoins() - base.getCoins()) - LEVEL_UP_BONUS * (mine.getLevel() - base.getLevel());
+        int completedGained = mine.getTotalCompletedTasks() - base.getTotalCompletedTasks();
+
+        // Worked out on a scratch user, which levels up the way the real one does
+        User merged = new User(username);
+        merged.setLevel(stored.getLevel());
+        merged.setXp(stored.getXp());
+        merged.setCoins(stored.getCoins() + coinsGained);
+        while (xpGained > 0) {
+            int grant = (int) Math.min(xpGained, Integer.MAX_VALUE);
+            merged.addXP(grant);
+            xpGained -= grant;
+        }
+        merged.setTotalCompletedTasks(stored.getTotalCompletedTasks() + completedGained);
+        return merged.getStats();
+    }
+
+    // Reuses our Task objects where possible, since list models on screen hold them
+    private static List<Task> mergeTasks(UserBaseline base, List<Task> mine, List<Task> stored) {
+        Map<Long, Task> ours = new HashMap<>();
+        for (Task task : mine) {
+            ours.put(task.getId(), task);
+        }
+        List<Task> tasks = new ArrayList<>(stored.size() + mine.size());
+        Set<Long> storedIds = new HashSet<>();
+        for (Task task : stored) {
+            long id = task.getId();
+            storedIds.add(id);
+            Task our = ours.get(id);
+            if (!base.hasTask(id)) {
+                // Added elsewhere (a task added here under the same id is a different one)
+                tasks.add(new Task(task));
+            } else if (our == null) {
+                // Deleted here
+            } else {
+                if (task.isCompleted() && !our.isCompleted()) {
+                    our.setCompleted(true);
+                    our.setCompletionDate(task.getCompletionDate());
+                }
+                tasks.add(our);
+            }
+        }
+        // Tasks deleted elsewhere stay deleted, even if completed here (the rewards are kept)
+        for (Task our : mine) {
+            if (base.hasTask(our.getId())) continue;
+            if (storedIds.contains(our.getId())) our.setId(0); // the list hands out a new one
+            tasks.add(our);
+        }
+        return tasks;
+    }
+}
@@ -0,0 +1,69 @@
+//util->InMemoryUserRepository
+package util;
+
+import models.User;
+import models.UserHeader;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Keeps everything on the heap; nothing survives a restart. Useful for demos, tests and
+// as a baseline when comparing the other stores.
+public class InMemoryUserRepository implements UserRepository {
+    private final Map<String, User> users = new ConcurrentHashMap<>();
+    private final Map<String, String> passwords = new ConcurrentHashMap<>();
+
+    @Override
+    public User load(String username) {
+        User user = users.get(username);
+        // Hand out copies so callers can't change the stored state without saving
+        return user != null ? new User(user) : null;
+    }
+
+    @Override
+    public UserHeader loadHeader(String username) {
+        User user = users.get(username);
+        return user != null ? user.getHeader() : null;
+    }
+
+    @Override
+    public void save(User user) {
+        users.put(user.getUsername(), new User(user));
+    }
+
+    @Override
+    public boolean exists(String username) {
+        return passwords.containsKey(username);
+    }
+
+    @Override
+    public boolean verifyPassword(String username, String password) {
+        String stored = passwords.get(username);
+        return stored != null && CredentialStore.checkPassword(stored, password);
+    }
+
+    @Override
+    public void savePassword(String username, String password) {
+        passwords.put(username, CredentialStore.hashPassword(password));
+    }
+
+    @Override
+    public String loadPasswordHash(String username) {
+        return passwords.get(username);
+    }
+
+    @Override
+    public void savePasswordHash(String username, String hash) {
+        passwords.put(username, hash);
+    }
+
+    @Override
+    public List<String> listUsers() {
+        List<String> names = new ArrayList<>(users.keySet());
+        Collections.sort(names);
+        return names;
+    }
+}
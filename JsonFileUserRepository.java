@@ -0,0 +1,441 @@
+//util->JsonFileUserRepository
+package util;
+
+import com.google.gson.Gson;
+import models.Task;
+import models.User;
+import models.UserHeader;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+// The default store: one snapshot per user under data/<shard>/, JSON or binary, plus an
+// append-only journal next to it. Passwords live in data/users.json.
+public class JsonFileUserRepository implements UserRepository {
+    // Snapshot format for new users: "json" (default) or "binary". Existing files keep their format.
+    private static final boolean WRITE_BINARY = "binary".equalsIgnoreCase(System.getProperty("studyleveling.storageFormat", "json"));
+    // Journal size after which it is folded into a fresh snapshot
+    private static final long JOURNAL_COMPACT_BYTES = Long.getLong("studyleveling.journalCompactBytes", 64 * 1024L);
+    // Enough of a snapshot for most headers, which both formats write before the tasks; a longer
+    // binary header is read to the length it records, a JSON one streamed to its end
+    private static final int HEADER_PREFIX_BYTES = 512;
+
+    // Streaming adapters for User/Task/LocalDate; compact unless studyleveling.prettyJson is set
+    private static final Gson gson = UserJson.create();
+
+    // data/<shard>/<username>.json, migrated from the old flat layout on first access
+    private final DataLayout layout;
+
+    // Recently loaded users, reused while their files are unchanged
+    private final UserCache userCache = new UserCache(
+            Integer.getInteger("studyleveling.userCacheSize", 64),
+            Long.getLong("studyleveling.userCacheMaxBytes", 64L << 20));
+
+    // Parsed once; re-read only if users.json changes on disk
+    private final CredentialStore credentials;
+
+    private final Object[] userLocks = new Object[64];
+
+    // Watches data/ once someone listens for outside changes. Each user's files as last
+    // written or reported by us, so our own writes are not reported back as changes.
+    private final List<UserChangeListener> changeListeners = new CopyOnWriteArrayList<>();
+    private DataWatcher watcher;
+    private final Map<String, UserCache.Stamp> knownStamps = new ConcurrentHashMap<>();
+
+    public JsonFileUserRepository(File dir) {
+        File passwordFile = new File(dir, "users.json");
+        this.layout = new DataLayout(dir, passwordFile.getName());
+        this.credentials = new CredentialStore(passwordFile);
+        for (int i = 0; i < userLocks.length; i++) {
+            userLocks[i] = new Object();
+        }
+        if (!dir.exists()) dir.mkdirs();
+    }
+
+    @Override
+    public User load(String username) {
+        File file = userFile(username);
+        if (!SnapshotFiles.exists(file)) {
+            userCache.invalidate(username);
+            return null;
+        }
+
+        UserCache.Stamp stamp = stamp(username);
+        User cached = userCache.get(username, stamp);
+        if (cached != null) return cached;
+
+        try {
+            byte[] stored = SnapshotFiles.read(file);
+            if (stored == null) return null;
+            byte[] upgraded = UserMigrations.upgrade(stored);
+            if (upgraded != null && rewriteUpgraded(username, stamp, upgraded)) {
+                stamp = stamp(username);
+            }
+            byte[] data = upgraded != null ? upgraded : stored;
+            List<TaskJournal.Record> journal = TaskJournal.read(journalFile(username));
+            UserHeader header = decodeHeader(data);
+            long bytes = data.length + stamp.journalLength;
+            if (header == null) {
+                // Old JSON layout without a header prefix
+                User user = decodeUser(data);
+                replayJournal(user, journal);
+                return userCache.put(username, stamp, user.getHeader(), bytes, user::getTaskSnapshot);
+            }
+            // Tasks are decoded (and the journal replayed on them) only if someone asks for them
+            return userCache.put(username, stamp, TaskJournal.applyToHeader(header, journal), bytes,
+                    () -> loadTasks(data, journal));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    // Reads only the start of the snapshot, plus the journal; the tasks are not parsed
+    @Override
+    public UserHeader loadHeader(String username) {
+        File file = userFile(username);
+        if (!SnapshotFiles.exists(file)) return null;
+
+        UserCache.Stamp stamp = stamp(username);
+        UserHeader cached = userCache.getHeader(username, stamp);
+        if (cached != null) return cached;
+
+        try {
+            UserHeader header = readHeaderPrefix(file);
+            if (header != null) {
+                return TaskJournal.applyToHeader(header, TaskJournal.read(journalFile(username)));
+            }
+        } catch (IOException | RuntimeException e) {
+            // Damaged or only a backup left; the full load knows how to deal with those
+        }
+        User user = load(username);
+        return user != null ? user.getHeader() : null;
+    }
+
+    @Override
+    public void save(User user) {
+        synchronized (lockFor(user.getUsername())) {
+            userCache.invalidate(user.getUsername());
+            File journal = journalFile(user.getUsername());
+            if (writeSnapshot(user) && journal.exists() && !journal.delete()) {
+                System.out.println("Could not delete compacted journal for " + user.getUsername());
+            }
+            rememberOwnWrite(user.getUsername());
+        }
+    }
+
+    @Override
+    public void append(User user, List<TaskJournal.Record> records) {
+        synchronized (lockFor(user.getUsername())) {
+            userCache.invalidate(user.getUsername());
+            File journal = journalFile(user.getUsername());
+            try {
+                TaskJournal.append(journal, records);
+                rememberOwnWrite(user.getUsername());
+                if (journal.length() < JOURNAL_COMPACT_BYTES) return;
+                System.out.println("Compacting journal for " + user.getUsername());
+            } catch (IOException e) {
+                // Fall back to a full snapshot, which covers the lost records
+                e.printStackTrace();
+            }
+            save(user);
+        }
+    }
+
+    // The version check and the write happen under an exclusive lock on data/<shard>/<user>.lock,
+    // so two processes saving the same user cannot both succeed against the same version
+    @Override
+    public boolean saveIfUnchanged(User user, List<TaskJournal.Record> records) {
+        String username = user.getUsername();
+        File lockFile = layout.lockFile(username);
+        lockFile.getParentFile().mkdirs();
+        synchronized (lockFor(username)) {
+            try (FileChannel channel = FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                 FileLock lock = channel.lock()) {
+                if (UserRepository.storedVersion(loadHeader(username)) != user.getVersion()) return false;
+                writeVersioned(user, records);
+                // Keep the header just written cached, so the next version check does not re-read it
+                userCache.putHeader(username, stamp(username), user.getHeader());
+                return true;
+            } catch (IOException e) {
+                // Could not lock; write without the version check rather than lose the save
+                e.printStackTrace();
+                writeVersioned(user, records);
+                return true;
+            }
+        }
+    }
+
+    // Saves a snapshot upgraded on load, so each user is migrated once. Skipped if the file
+    // changed since it was read (it is then upgraded again on the next load).
+    private boolean rewriteUpgraded(String username, UserCache.Stamp readStamp, byte[] data) {
+        File lockFile = layout.lockFile(username);
+        lockFile.getParentFile().mkdirs();
+        synchronized (lockFor(username)) {
+            try (FileChannel channel = FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                 FileLock lock = channel.lock()) {
+                if (!stamp(username).matches(readStamp)) return false;
+                SnapshotFiles.write(userFile(username), data);
+                rememberOwnWrite(username);
+                System.out.println("Upgraded " + username + " to the current user schema");
+                return true;
+            } catch (IOException e) {
+                e.printStackTrace();
+                return false;
+            }
+        }
+    }
+
+    @Override
+    public synchronized void addChangeListener(UserChangeListener listener) {
+        changeListeners.add(listener);
+        if (watcher != null) return;
+        try {
+            watcher = new DataWatcher(layout.root(), this::fileChanged, this::everythingChanged);
+        } catch (IOException e) {
+            // Still correct without it: cached users are checked against the files on every load
+            System.out.println("⚠ Could not watch the data directory for outside changes");
+            e.printStackTrace();
+        }
+    }
+
+    private void rememberOwnWrite(String username) {
+        if (watcher != null) knownStamps.put(username, stamp(username));
+    }
+
+    private void fileChanged(Path path) {
+        String name = path.getFileName().toString();
+        String passwords = layout.reservedName();
+        if (name.equals(passwords) || name.equals(passwords + ".bak") || name.equals(passwords + ".tmp")) {
+            credentials.invalidate();
+            return;
+        }
+        String username = layout.usernameOf(name);
+        if (username == null) return;
+        synchronized (lockFor(username)) {
+            // Waits for a write of ours in progress, which then shows up as known
+            UserCache.Stamp current = stamp(username);
+            UserCache.Stamp known = knownStamps.put(username, current);
+            if (known != null && known.matches(current)) return;
+            userCache.invalidate(username);
+        }
+        System.out.println("🔄 " + username + " was changed outside this app");
+        for (UserChangeListener listener : changeListeners) {
+            listener.userChanged(username);
+        }
+    }
+
+    // Events were lost; assume every user may have changed
+    private void everythingChanged() {
+        userCache.clear();
+        credentials.invalidate();
+        knownStamps.clear();
+        for (String username : listUsers()) {
+            for (UserChangeListener listener : changeListeners) {
+                listener.userChanged(username);
+            }
+        }
+    }
+
+    // Writes of one user are serialized; different users (e.g. a bulk import) write in parallel
+    private Object lockFor(String username) {
+        return userLocks[Math.floorMod(username.hashCode(), userLocks.length)];
+    }
+
+    @Override
+    public boolean exists(String username) {
+        return credentials.contains(username);
+    }
+
+    @Override
+    public boolean verifyPassword(String username, String password) {
+        return credentials.verify(username, password);
+    }
+
+    @Override
+    public void savePassword(String username, String password) {
+        credentials.put(username, password);
+    }
+
+    @Override
+    public String loadPasswordHash(String username) {
+        return credentials.getHash(username);
+    }
+
+    @Override
+    public void savePasswordHash(String username, String hash) {
+        credentials.putHash(username, hash);
+    }
+
+    @Override
+    public void savePasswordHashes(Map<String, String> hashes) {
+        credentials.putHashes(hashes);
+    }
+
+    private void writeVersioned(User user, List<TaskJournal.Record> records) {
+        UserRepository.bumpVersion(user, records);
+        if (records == null) {
+            save(user);
+        } else {
+            append(user, records);
+        }
+    }
+
+    // Every username with a snapshot in data/; the shard directories are scanned in parallel
+    @Override
+    public List<String> listUsers() {
+        return layout.listUsernames();
+    }
+
+    public UserCache getUserCache() {
+        return userCache;
+    }
+
+    // One-shot conversion of every JSON user snapshot to the binary format.
+    // Returns the number of users converted.
+    public synchronized int migrateAllToBinary() {
+        int migrated = 0;
+        for (String username : listUsers()) {
+            File file = userFile(username);
+            try {
+                byte[] data = SnapshotFiles.read(file);
+                if (data == null || BinaryUserCodec.isBinary(data)) continue;
+                byte[] upgraded = UserMigrations.upgrade(data);
+                if (upgraded != null) data = upgraded;
+                User user = gson.fromJson(new InputStreamReader(new ByteArrayInputStream(data), StandardCharsets.UTF_8), User.class);
+                byte[] binary = BinaryUserCodec.encode(user);
+                SnapshotFiles.write(file, binary);
+                userCache.invalidate(user.getUsername());
+                migrated++;
+                System.out.println("Migrated " + user.getUsername() + " to binary (" + data.length + " -> " + binary.length + " bytes)");
+            } catch (IOException | RuntimeException e) {
+                System.out.println("❌ Could not migrate " + file.getName());
+                e.printStackTrace();
+            }
+        }
+        return migrated;
+    }
+
+    // Moves all users still in the flat data/ layout into shard directories
+    public synchronized int migrateAllToShards() {
+        userCache.clear();
+        return layout.migrateAll();
+    }
+
+    private boolean writeSnapshot(User user) {
+        File file = userFile(user.getUsername());
+        // Users already migrated to the binary format stay binary
+        boolean binary = WRITE_BINARY || BinaryUserCodec.isBinary(readHeader(file));
+        byte[] data = binary ? BinaryUserCodec.encode(user) : gson.toJson(user).getBytes(StandardCharsets.UTF_8);
+        try {
+            SnapshotFiles.write(file, data);
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    // Snapshots are either JSON or the binary format, told apart by the binary magic header
+    private static User decodeUser(byte[] data) throws IOException {
+        if (BinaryUserCodec.isBinary(data)) {
+            return BinaryUserCodec.decode(data);
+        }
+        return gson.fromJson(new InputStreamReader(new ByteArrayInputStream(data), StandardCharsets.UTF_8), User.class);
+    }
+
+    // Header of a snapshot held in memory, or null for the old JSON layout
+    private static UserHeader decodeHeader(byte[] data) throws IOException {
+        if (BinaryUserCodec.isBinary(data)) {
+            return BinaryUserCodec.decodeHeader(data);
+        }
+        return UserJson.readHeader(new InputStreamReader(new ByteArrayInputStream(data), StandardCharsets.UTF_8));
+    }
+
+    private static UserHeader readHeaderPrefix(File file) throws IOException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file), HEADER_PREFIX_BYTES)) {
+            in.mark(HEADER_PREFIX_BYTES);
+            byte[] prefix = in.readNBytes(HEADER_PREFIX_BYTES);
+            if (BinaryUserCodec.isBinary(prefix)) {
+                // A long completion history can make the header outgrow the prefix
+                int needed = BinaryUserCodec.headerBytes(prefix);
+                if (needed > prefix.length) {
+                    byte[] rest = in.readNBytes(needed - prefix.length);
+                    prefix = Arrays.copyOf(prefix, prefix.length + rest.length);
+                    System.arraycopy(rest, 0, prefix, prefix.length - rest.length, rest.length);
+                }
+                return BinaryUserCodec.decodeHeader(prefix);
+            }
+            in.reset();
+            return UserJson.readHeader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        }
+    }
+
+    // The task loader of a lazily loaded user: the full snapshot plus the journal on top
+    private List<Task> loadTasks(byte[] data, List<TaskJournal.Record> journal) {
+        try {
+            User user = decodeUser(data);
+            replayJournal(user, journal);
+            return user.getTasks();
+        } catch (IOException e) {
+            // The header of the same bytes decoded fine, so this means a corrupt task section
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static byte[] readHeader(File file) {
+        byte[] header = new byte[4];
+        try (FileInputStream in = new FileInputStream(file)) {
+            int n = in.read(header);
+            return n == header.length ? header : new byte[0];
+        } catch (IOException e) {
+            return new byte[0];
+        }
+    }
+
+    // Applies journal records newer than the snapshot; older ones were already compacted into it
+    private static void replayJournal(User user, List<TaskJournal.Record> journal) {
+        int replayed = 0;
+        for (TaskJournal.Record record : journal) {
+            if (record.getSeq() > user.getJournalSequence()) {
+                TaskJournal.apply(user, record);
+                replayed++;
+            }
+        }
+        if (replayed > 0) {
+            System.out.println("Replayed " + replayed + " journal records for " + user.getUsername());
+        }
+    }
+
+    private UserCache.Stamp stamp(String username) {
+        File journal = journalFile(username);
+        try {
+            BasicFileAttributes snapshot = Files.readAttributes(userFile(username).toPath(), BasicFileAttributes.class);
+            return new UserCache.Stamp(snapshot.fileKey(), snapshot.lastModifiedTime().to(TimeUnit.NANOSECONDS),
+                    snapshot.size(), journal.lastModified(), journal.length());
+        } catch (IOException e) {
+            // Snapshot missing; a stamp that matches nothing cached
+            return new UserCache.Stamp(new Object(), 0, 0, journal.lastModified(), journal.length());
+        }
+    }
+
+    private File userFile(String username) {
+        return layout.userFile(username);
+    }
+
+    private File journalFile(String username) {
+        return layout.journalFile(username);
+    }
+}
@@ -18,6 +18,8 @@ public class MainMenu extends JFrame {
     private JLabel xpLabel;
     private JLabel coinLabel;
     private JToggleButton themeToggle; // New theme toggle button
+    // Another app instance or a restore changed this user on disk
+    private final util.UserChangeListener changeListener = this::userChanged;
 
     public MainMenu(User user) {
         this.user = user;
@@ -30,6 +32,20 @@ public class MainMenu extends JFrame {
         setLocationRelativeTo(null);
         setLayout(null);
 
+        // Write any queued saves before the app exits
+        addWindowListener(new java.awt.event.WindowAdapter() {
+            @Override
+            public void windowClosing(java.awt.event.WindowEvent windowEvent) {
+                util.DataManager.flush();
+            }
+
+            // Disposed (e.g. on logout): stop hearing about a user this frame no longer shows
+            @Override
+            public void windowClosed(java.awt.event.WindowEvent windowEvent) {
+                util.DataManager.removeChangeListener(changeListener);
+            }
+        });
+
         // Apply current theme
         ThemeManager themeManager = ThemeManager.getInstance();
         getContentPane().setBackground(themeManager.getColor("background"));
@@ -95,10 +111,20 @@ public class MainMenu extends JFrame {
 
         setVisible(true);
 
+        util.DataManager.addChangeListener(changeListener);
+
         // Upload user stats to Firebase
         FirebaseManager.uploadUserStats(user);
     }
 
+    private void userChanged(String username) {
+        if (!username.equals(user.getUsername())) return;
+        SwingUtilities.invokeLater(() -> {
+            util.DataManager.refreshUser(user);
+            refreshStats();
+        });
+    }
+
     // Toggle theme between light and dark mode
     private void toggleTheme() {
         ThemeManager themeManager = ThemeManager.getInstance();
@@ -178,14 +204,12 @@ public class MainMenu extends JFrame {
 
     // Method to update user data from multiplayer mode
     public void updateUserFromMultiplayer(int xpGained, int coinsGained) {
-        // Add the gained XP and coins to the main user
-        if (xpGained > 0) {
-            user.addXP(xpGained);
-        }
+        updateUserFromMultiplayer(xpGained, coinsGained, 0);
+    }
 
-        if (coinsGained > 0) {
-            user.addCoins(coinsGained);
-        }
+    public void updateUserFromMultiplayer(int xpGained, int coinsGained, int completedTasks) {
+        // Add the session's gains to the main user in one step
+        user.grant(new User.Grant(Math.max(xpGained, 0), Math.max(coinsGained, 0), Math.max(completedTasks, 0)));
 
         // Update the UI
         refreshStats();
@@ -0,0 +1,440 @@
+//util->MappedUserRepository
+package util;
+
+import models.User;
+import models.UserHeader;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+// Store for machines with many accounts: every user and password lives in one memory-mapped
+// segment file (data/users.mdb), so loads and saves never open a file.
+//
+// An open-addressing hash index maps usernames to record offsets. Records are never
+// rewritten in place: a save appends the new version at the end of the segment, forces it,
+// and only then marks the old slot free, so a crash mid-write leaves the previous version
+// intact (if both are still live on the next open, the later one wins). A background
+// compactor rewrites the segment once free slots make up most of it. data/users.mdb.lock
+// stays locked while the store is open, also across a compaction swapping the file.
+//
+// File: header (magic, version, data end) followed by records:
+//   int capacity | int length | int crc32 | byte kind | byte status | short name length | name | payload
+// capacity is the slot size including this header; length and the CRC cover name + payload.
+public class MappedUserRepository implements UserRepository {
+    private static final int MAGIC = 0x534C4D4D; // "SLMM"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int DATA_END_OFFSET = 8;
+    private static final int RECORD_HEADER = 4 + 4 + 4 + 1 + 1 + 2;
+    private static final int ALIGNMENT = 64;
+    // Payload bytes read first for a header-only load; more if the header records it is longer
+    private static final int HEADER_PREFIX_BYTES = 512;
+
+    private static final byte KIND_USER = 1;
+    private static final byte KIND_PASSWORD = 2;
+    private static final byte STATUS_LIVE = 1;
+    private static final byte STATUS_FREE = 2;
+
+    private static final long MIN_COMPACT_BYTES = 1024 * 1024;
+    private static final long INITIAL_SIZE = 1024 * 1024;
+
+    private final Path path;
+    private FileChannel lockChannel;
+    private FileChannel channel;
+    private MappedByteBuffer map;
+    private long dataEnd;
+    private long freeBytes;
+
+    private final Index users = new Index();
+    private final Index passwords = new Index();
+
+    public MappedUserRepository(File file) {
+        this.path = file.toPath();
+        try {
+            Files.createDirectories(path.getParent());
+            lock();
+            open();
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not open " + file, e);
+        }
+
+        ScheduledExecutorService compactor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "MappedUserRepository-compactor");
+            t.setDaemon(true);
+            return t;
+        });
+        compactor.scheduleWithFixedDelay(this::compactIfFragmented, 30, 30, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public synchronized User load(String username) {
+        long offset = users.get(username);
+        if (offset < 0) return null;
+        try {
+            return BinaryUserCodec.decode(readPayload(offset));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    // Decodes straight from the mapping without the CRC check, which would touch the whole
+    // record; a full load still checks it
+    @Override
+    public synchronized UserHeader loadHeader(String username) {
+        long offset = users.get(username);
+        if (offset < 0) return null;
+        try {
+            int pos = (int) offset;
+            int nameLength = map.getShort(pos + 14) & 0xFFFF;
+            int payloadLength = map.getInt(pos + 4) - nameLength;
+            byte[] prefix = new byte[Math.min(payloadLength, HEADER_PREFIX_BYTES)];
+            map.get(pos + RECORD_HEADER + nameLength, prefix);
+            // A long completion history can make the header outgrow the prefix
+            int needed = BinaryUserCodec.headerBytes(prefix);
+            if (needed > prefix.length && needed <= payloadLength) {
+                prefix = new byte[needed];
+                map.get(pos + RECORD_HEADER + nameLength, prefix);
+            }
+            return BinaryUserCodec.decodeHeader(prefix);
+        } catch (IOException | RuntimeException e) {
+            User user = load(username);
+            return user != null ? user.getHeader() : null;
+        }
+    }
+
+    @Override
+    public synchronized void save(User user) {
+        try {
+            put(users, KIND_USER, user.getUsername(), BinaryUserCodec.encode(user));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public synchronized boolean exists(String username) {
+        return passwords.get(username) >= 0;
+    }
+
+    @Override
+    public synchronized boolean verifyPassword(String username, String password) {
+        long offset = passwords.get(username);
+        if (offset < 0) return false;
+        try {
+            String stored = new String(readPayload(offset), StandardCharsets.UTF_8);
+            return CredentialStore.checkPassword(stored, password);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    @Override
+    public synchronized void savePassword(String username, String password) {
+        savePasswordHash(username, CredentialStore.hashPassword(password));
+    }
+
+    @Override
+    public synchronized String loadPasswordHash(String username) {
+        long offset = passwords.get(username);
+        if (offset < 0) return null;
+        try {
+            return new String(readPayload(offset), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    @Override
+    public synchronized void savePasswordHash(String username, String hash) {
+        try {
+            put(passwords, KIND_PASSWORD, username, hash.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public synchronized List<String> listUsers() {
+        List<String> names = users.keys();
+        Collections.sort(names);
+        return names;
+    }
+
+    private void open() throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        boolean fresh = channel.size() < HEADER_SIZE;
+        map = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(channel.size(), INITIAL_SIZE));
+
+        if (fresh) {
+            map.putInt(0, MAGIC);
+            map.putInt(4, VERSION);
+            setDataEnd(HEADER_SIZE);
+            map.force();
+            return;
+        }
+        if (map.getInt(0) != MAGIC || map.getInt(4) != VERSION) {
+            throw new IOException(path.getFileName() + " is not a user segment file");
+        }
+
+        dataEnd = map.getLong(DATA_END_OFFSET);
+        long offset = HEADER_SIZE;
+        while (offset < dataEnd) {
+            int capacity = map.getInt((int) offset);
+            if (capacity < RECORD_HEADER || offset + capacity > dataEnd) {
+                System.out.println("⚠ Damaged record in " + path.getFileName() + " at " + offset + ", ignoring the rest");
+                setDataEnd(offset);
+                break;
+            }
+            byte kind = map.get((int) offset + 12);
+            byte status = map.get((int) offset + 13);
+            if (status == STATUS_LIVE && verify(offset)) {
+                Index index = kind == KIND_USER ? users : passwords;
+                String name = readName(offset);
+                long older = index.get(name);
+                if (older >= 0) {
+                    // A crash came between writing the newer copy and freeing this one
+                    map.put((int) older + 13, STATUS_FREE);
+                    freeBytes += map.getInt((int) older);
+                }
+                index.put(name, offset);
+            } else {
+                if (status == STATUS_LIVE) {
+                    // A torn save leaves the previous copy live before this one; otherwise it is lost
+                    System.out.println("⚠ Damaged record in " + path.getFileName() + " at " + offset + ", skipped");
+                }
+                freeBytes += capacity;
+            }
+            offset += capacity;
+        }
+    }
+
+    // Only one process may have the store open; its in-memory index would go stale otherwise.
+    // The lock is on a file of its own, held until exit, so compact() can replace the segment.
+    private void lock() throws IOException {
+        Path lockFile = path.resolveSibling(path.getFileName() + ".lock");
+        lockChannel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        if (lockChannel.tryLock() == null) {
+            lockChannel.close();
+            throw new IOException(path.getFileName() + " is in use by another process");
+        }
+    }
+
+    // Appends the record and, once it is on disk, frees the previous version's slot
+    private void put(Index index, byte kind, String name, byte[] payload) throws IOException {
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        int capacity = slotSize(nameBytes.length + payload.length);
+        long offset = dataEnd;
+        ensureMapped(offset + capacity);
+        writeRecord(map, offset, capacity, kind, nameBytes, payload);
+        setDataEnd(offset + capacity);
+        map.force();
+
+        long existing = index.get(name);
+        if (existing >= 0) {
+            // Reaches the disk with the next force; until then a reopen frees it instead
+            map.put((int) existing + 13, STATUS_FREE);
+            freeBytes += map.getInt((int) existing);
+        }
+        index.put(name, offset);
+    }
+
+    private static void writeRecord(MappedByteBuffer target, long offset, int capacity, byte kind, byte[] name, byte[] payload) {
+        int pos = (int) offset;
+        CRC32 crc = new CRC32();
+        crc.update(name);
+        crc.update(payload);
+
+        target.putInt(pos, capacity);
+        target.putInt(pos + 4, name.length + payload.length);
+        target.putInt(pos + 8, (int) crc.getValue());
+        target.put(pos + 12, kind);
+        target.put(pos + 13, STATUS_LIVE);
+        target.putShort(pos + 14, (short) name.length);
+        target.put(pos + RECORD_HEADER, name);
+        target.put(pos + RECORD_HEADER + name.length, payload);
+    }
+
+    private boolean verify(long offset) {
+        int pos = (int) offset;
+        int length = map.getInt(pos + 4);
+        if (length < 0 || RECORD_HEADER + length > map.getInt(pos)) return false;
+        byte[] body = new byte[length];
+        map.get(pos + RECORD_HEADER, body);
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        return (int) crc.getValue() == map.getInt(pos + 8);
+    }
+
+    private String readName(long offset) {
+        int pos = (int) offset;
+        byte[] name = new byte[map.getShort(pos + 14) & 0xFFFF];
+        map.get(pos + RECORD_HEADER, name);
+        return new String(name, StandardCharsets.UTF_8);
+    }
+
+    private byte[] readPayload(long offset) throws IOException {
+        if (!verify(offset)) throw new IOException("Checksum mismatch at " + offset + " in " + path.getFileName());
+        int pos = (int) offset;
+        int nameLength = map.getShort(pos + 14) & 0xFFFF;
+        byte[] payload = new byte[map.getInt(pos + 4) - nameLength];
+        map.get(pos + RECORD_HEADER + nameLength, payload);
+        return payload;
+    }
+
+    private void setDataEnd(long end) {
+        dataEnd = end;
+        map.putLong(DATA_END_OFFSET, end);
+    }
+
+    // Grows the file and the mapping (doubling) so that [0, end) is mapped
+    private void ensureMapped(long end) throws IOException {
+        if (end <= map.capacity()) return;
+        long size = map.capacity();
+        while (size < end) size *= 2;
+        if (size > Integer.MAX_VALUE) throw new IOException(path.getFileName() + " is full");
+        map.force();
+        map = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+
+    // Slot for a record body; records are not rewritten in place, so no slack
+    private static int slotSize(int bodyLength) {
+        int size = RECORD_HEADER + bodyLength;
+        return (size + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+
+    private synchronized void compactIfFragmented() {
+        long used = dataEnd - HEADER_SIZE;
+        if (freeBytes < MIN_COMPACT_BYTES || freeBytes * 2 < used) return;
+        try {
+            compact();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Copies the live records into a new segment and swaps it in (the lock file stays locked)
+    private void compact() throws IOException {
+        System.out.println("Compacting " + path.getFileName() + " (" + freeBytes + " free bytes)");
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        long size = HEADER_SIZE;
+        for (Index index : new Index[]{users, passwords}) {
+            for (String name : index.keys()) size += slotSize(map.getInt((int) index.get(name) + 4));
+        }
+
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer target = out.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(size, INITIAL_SIZE));
+            target.putInt(0, MAGIC);
+            target.putInt(4, VERSION);
+            long offset = HEADER_SIZE;
+            for (String name : users.keys()) {
+                offset += copyRecord(users.get(name), target, offset);
+            }
+            for (String name : passwords.keys()) {
+                offset += copyRecord(passwords.get(name), target, offset);
+            }
+            target.putLong(DATA_END_OFFSET, offset);
+            target.force();
+        }
+
+        map.force();
+        channel.close();
+        try {
+            Files.move(tmp, path, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+        users.clear();
+        passwords.clear();
+        freeBytes = 0;
+        open();
+    }
+
+    private long copyRecord(long offset, MappedByteBuffer target, long targetOffset) throws IOException {
+        int pos = (int) offset;
+        byte[] name = new byte[map.getShort(pos + 14) & 0xFFFF];
+        map.get(pos + RECORD_HEADER, name);
+        int capacity = slotSize(map.getInt(pos + 4));
+        writeRecord(target, targetOffset, capacity, map.get(pos + 12), name, readPayload(offset));
+        return capacity;
+    }
+
+    // Open-addressing (linear probing) map from name to record offset
+    private static class Index {
+        private String[] keys = new String[64];
+        private long[] offsets = new long[64];
+        private int size;
+
+        long get(String key) {
+            int mask = keys.length - 1;
+            for (int i = hash(key) & mask; keys[i] != null; i = (i + 1) & mask) {
+                if (keys[i].equals(key)) return offsets[i];
+            }
+            return -1;
+        }
+
+        void put(String key, long offset) {
+            if ((size + 1) * 2 > keys.length) resize();
+            int mask = keys.length - 1;
+            int i = hash(key) & mask;
+            while (keys[i] != null) {
+                if (keys[i].equals(key)) {
+                    offsets[i] = offset;
+                    return;
+                }
+                i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            offsets[i] = offset;
+            size++;
+        }
+
+        List<String> keys() {
+            List<String> result = new ArrayList<>(size);
+            for (String key : keys) {
+                if (key != null) result.add(key);
+            }
+            return result;
+        }
+
+        void clear() {
+            keys = new String[64];
+            offsets = new long[64];
+            size = 0;
+        }
+
+        private void resize() {
+            String[] oldKeys = keys;
+            long[] oldOffsets = offsets;
+            keys = new String[oldKeys.length * 2];
+            offsets = new long[oldKeys.length * 2];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != null) put(oldKeys[i], oldOffsets[i]);
+            }
+        }
+
+        private static int hash(String key) {
+            int h = key.hashCode();
+            return h ^ (h >>> 16);
+        }
+    }
+}
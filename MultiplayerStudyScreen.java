@@ -50,6 +50,7 @@ public class MultiplayerStudyScreen extends JFrame {
             @Override
             public void windowClosing(java.awt.event.WindowEvent windowEvent) {
                 syncUsersWithMainAccounts();
+                DataManager.requestFlush();
             }
         });
 
@@ -206,10 +207,7 @@ public class MultiplayerStudyScreen extends JFrame {
         complete.addActionListener(e -> {
             Task task = taskList.getSelectedValue();
             if (task != null && !task.isCompleted()) {
-                task.setCompleted(true);
-                user.addXP(task.getXpReward());
-                user.addCoins(task.getCoinReward());
-                user.incrementCompletedTasksCounter(); // Increment the completed tasks counter
+                user.completeTask(task); // Rewards, the completed tasks counter and the task totals
                 JOptionPane.showMessageDialog(this,
                         user.getUsername() + " completed a task! + " +
                                 task.getXpReward() + " XP, + " + task.getCoinReward() + " Coins!");
@@ -272,12 +270,7 @@ public class MultiplayerStudyScreen extends JFrame {
                 int coinsGained = currentCoins - originalCoins;
 
                 // Count how many tasks were completed in this multiplayer session
-                int completedTasksInSession = 0;
-                for (Task task : user.getTasks()) {
-                    if (task.isCompleted()) {
-                        completedTasksInSession++;
-                    }
-                }
+                int completedTasksInSession = user.getTaskTotals().getCompleted();
                 System.out.println("Tasks completed in this session: " + completedTasksInSession);
 
                 System.out.println("Original state - XP: " + originalXP + ", Coins: " + originalCoins);
@@ -311,40 +304,27 @@ public class MultiplayerStudyScreen extends JFrame {
                     // Refresh the main menu UI to show updated stats immediately
                     mainMenu.refreshStats();
 
-                    // Update the total completed tasks counter for each completed task in this session
+                    // Update the total completed tasks counter for the tasks completed in this session
                     // We need to do this because we previously cleared the tasks when starting the session
-                    for (int i = 0; i < completedTasksInSession; i++) {
-                        mainUser.incrementCompletedTasksCounter();
-                    }
+                    mainUser.grant(new User.Grant(0, 0, completedTasksInSession));
 
                     // Transfer newly completed tasks from multiplayer session to main account
                     for (Task task : user.getTasks()) {
                         if (task.isCompleted()) {
                             // Skip tasks that were already completed in the original state
-                            boolean wasCompletedBefore = false;
-                            for (Task originalTask : originalUser.getTasks()) {
-                                if (originalTask.getDescription().equals(task.getDescription()) &&
-                                    originalTask.isCompleted()) {
-                                    wasCompletedBefore = true;
-                                    break;
-                                }
-                            }
+                            Task originalTask = originalUser.getTask(task.getId());
+                            boolean wasCompletedBefore = isSameTask(originalTask, task) && originalTask.isCompleted();
 
                             if (wasCompletedBefore) {
                                 continue;
                             }
 
                             // Add completed task to main user if it doesn't exist
-                            boolean taskExistsInMain = false;
-                            for (Task mainTask : mainUser.getTasks()) {
-                                if (mainTask.getDescription().equals(task.getDescription())) {
-                                    taskExistsInMain = true;
-                                    // Mark as completed if not already
-                                    if (!mainTask.isCompleted()) {
-                                        mainTask.setCompleted(true);
-                                    }
-                                    break;
-                                }
+                            Task mainTask = mainUser.getTask(task.getId());
+                            boolean taskExistsInMain = isSameTask(mainTask, task);
+                            if (taskExistsInMain) {
+                                // Mark as completed if not already
+                                mainUser.markCompleted(mainTask);
                             }
 
                             if (!taskExistsInMain) {
@@ -354,12 +334,18 @@ public class MultiplayerStudyScreen extends JFrame {
                                     task.getCoinReward(),
                                     task.getDifficulty()
                                 );
-                                newTask.setCompleted(true);
+                                // Added open, then completed through the user, so its totals and
+                                // completion calendar count it
                                 mainUser.getTasks().add(newTask);
+                                mainUser.markCompleted(newTask);
                             }
                         }
                     }
 
+                    // The main user now holds the session's totals; store it as-is rather than
+                    // merging it with the session copy's saves, which would count the gains twice
+                    DataManager.overwriteUser(mainUser);
+
                     // Upload stats to Firebase to update the global leaderboard
                     util.FirebaseManager.uploadUserStats(mainUser);
 
@@ -383,41 +369,24 @@ public class MultiplayerStudyScreen extends JFrame {
                 User mainUser = DataManager.loadUser(user.getUsername());
                 if (mainUser != null) {
                     // Store state before applying changes for confirmation message
-                    int beforeXP = mainUser.getXp();
-                    int beforeLevel = mainUser.getLevel();
+                    long beforeXP = mainUser.getTotalXp();
                     int beforeCoins = mainUser.getCoins();
 
-                    System.out.println("Main account before sync - XP: " + beforeXP + ", Coins: " + beforeCoins);
-
-                    // Apply the gains directly to the main account
-                    if (xpGained > 0) {
-                        mainUser.addXP(xpGained);
-                    }
+                    System.out.println("Main account before sync - XP: " + mainUser.getXp() + ", Coins: " + beforeCoins);
 
-                    if (coinsGained > 0) {
-                        mainUser.addCoins(coinsGained);
-                    }
+                    // Apply the session's gains, and its completed tasks to the counter (the tasks were
+                    // cleared when the session started), to the main account in one step
+                    int levelsGained = mainUser.grant(new User.Grant(Math.max(xpGained, 0), Math.max(coinsGained, 0),
+                            completedTasksInSession));
 
                     System.out.println("Main account after sync - XP: " + mainUser.getXp() + ", Coins: " + mainUser.getCoins());
 
-                    // Update the total completed tasks counter for each completed task in this session
-                    // We need to do this because we previously cleared the tasks when starting the session
-                    for (int i = 0; i < completedTasksInSession; i++) {
-                        mainUser.incrementCompletedTasksCounter();
-                    }
-
                     // Transfer newly completed tasks from multiplayer session to main account
                     for (Task task : user.getTasks()) {
                         if (task.isCompleted()) {
                             // Skip tasks that were already completed in the original state
-                            boolean wasCompletedBefore = false;
-                            for (Task originalTask : originalUser.getTasks()) {
-                                if (originalTask.getDescription().equals(task.getDescription()) &&
-                                    originalTask.isCompleted()) {
-                                    wasCompletedBefore = true;
-                                    break;
-                                }
-                            }
+                            Task originalTask = originalUser.getTask(task.getId());
+                            boolean wasCompletedBefore = isSameTask(originalTask, task) && originalTask.isCompleted();
 
                             if (wasCompletedBefore) {
                                 System.out.println("Task was already completed before: " + task.getDescription());
@@ -425,16 +394,11 @@ public class MultiplayerStudyScreen extends JFrame {
                             }
 
                             // Now check if task exists in main account and update it
-                            boolean taskExistsInMain = false;
-                            for (Task mainTask : mainUser.getTasks()) {
-                                if (mainTask.getDescription().equals(task.getDescription())) {
-                                    taskExistsInMain = true;
-                                    // Mark as completed if not already
-                                    if (!mainTask.isCompleted()) {
-                                        mainTask.setCompleted(true);
-                                    }
-                                    break;
-                                }
+                            Task mainTask = mainUser.getTask(task.getId());
+                            boolean taskExistsInMain = isSameTask(mainTask, task);
+                            if (taskExistsInMain) {
+                                // Mark as completed if not already
+                                mainUser.markCompleted(mainTask);
                             }
 
                             // Add task to main account if it doesn't exist
@@ -445,8 +409,10 @@ public class MultiplayerStudyScreen extends JFrame {
                                     task.getCoinReward(),
                                     task.getDifficulty()
                                 );
-                                newTask.setCompleted(true);
+                                // Added open, then completed through the user, so its totals and
+                                // completion calendar count it
                                 mainUser.getTasks().add(newTask);
+                                mainUser.markCompleted(newTask);
                                 System.out.println("Added new completed task to main account: " + task.getDescription());
                             }
                         }
@@ -459,8 +425,7 @@ public class MultiplayerStudyScreen extends JFrame {
                     util.FirebaseManager.uploadUserStats(mainUser);
 
                     // Calculate actual gains for display
-                    int actualXPGained = mainUser.getXp() - beforeXP;
-                    int levelsGained = mainUser.getLevel() - beforeLevel;
+                    long actualXPGained = mainUser.getTotalXp() - beforeXP;
                     int actualCoinsGained = mainUser.getCoins() - beforeCoins;
 
                     // Show message about progress saved
@@ -554,4 +519,9 @@ public class MultiplayerStudyScreen extends JFrame {
             }
         }
     }
+
+    // Matched by id; the description guards against an id the other account gave to a different task
+    private static boolean isSameTask(Task candidate, Task task) {
+        return candidate != null && candidate.getDescription().equals(task.getDescription());
+    }
 }
@@ -1,11 +1,16 @@
 package ui;
 
+import models.CompletionCalendar;
 import models.Task;
+import models.TaskTotals;
 import models.User;
+import util.DataManager;
+import util.TaskArchive;
 
 import javax.swing.*;
 import javax.swing.border.TitledBorder;
 import javax.swing.table.DefaultTableCellRenderer;
+import javax.swing.table.DefaultTableModel;
 import java.awt.*;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
@@ -19,6 +24,12 @@ public class ProgressScreen extends JFrame {
     private final Font headerFont = new Font("Monospaced", Font.BOLD, 18);
     private final Font labelFont = new Font("Monospaced", Font.BOLD, 14);
     private final Color accentColor = new Color(199, 21, 133); // Deep pink accent
+    private static final int HISTORY_PAGE_SIZE = 100;
+    private static final int HEATMAP_WEEKS = 12;
+
+    // Totals for old completed tasks that were moved out of the user into the archive
+    private TaskArchive.Summary archived;
+    private TaskArchive.History archivedHistory;
 
     public ProgressScreen() {
         // Get the current user from MainMenu
@@ -29,12 +40,22 @@ public class ProgressScreen extends JFrame {
             return;
         }
 
+        archived = DataManager.getArchive().summary(user.getUsername());
+
         setTitle("📊 Study Progress for " + user.getUsername());
         setSize(900, 700);
         setLocationRelativeTo(null);
         setDefaultCloseOperation(DISPOSE_ON_CLOSE);
         getContentPane().setBackground(backgroundColor);
 
+        // Release the archive file the history tab may still be reading
+        addWindowListener(new java.awt.event.WindowAdapter() {
+            @Override
+            public void windowClosed(java.awt.event.WindowEvent e) {
+                if (archivedHistory != null) archivedHistory.close();
+            }
+        });
+
         // Create tabbed pane for different progress views
         JTabbedPane tabbedPane = new JTabbedPane();
         tabbedPane.setFont(labelFont);
@@ -84,8 +105,9 @@ public class ProgressScreen extends JFrame {
         panel.setBackground(backgroundColor);
 
         // Calculate key metrics
-        int totalTasks = user.getTasks().size();
-        long completedTasks = user.getTasks().stream().filter(Task::isCompleted).count();
+        TaskTotals totals = user.getTaskTotals();
+        int totalTasks = totals.getTasks() + archived.getTasks();
+        long completedTasks = totals.getCompleted() + archived.getTasks();
         int completionRate = totalTasks > 0 ? (int)((completedTasks * 100) / totalTasks) : 0;
         int totalXP = user.getXp();
         int totalCoins = user.getCoins();
@@ -140,18 +162,14 @@ public class ProgressScreen extends JFrame {
             BorderFactory.createEmptyBorder(10, 10, 10, 10)
         ));
 
-        // Calculate XP needed for next level
+        // XP counts up from 0 within each level, towards the same curve User.addXP levels on
         int currentLevel = user.getLevel();
         int currentXP = user.getXp();
-        int xpForCurrentLevel = calculateXPForLevel(currentLevel);
-        int xpForNextLevel = calculateXPForLevel(currentLevel + 1);
-        int xpNeeded = xpForNextLevel - xpForCurrentLevel;
+        long xpForNextLevel = user.xpNeeded(currentLevel);
 
-        // Fix the calculation for progress
-        int xpProgress = currentXP - xpForCurrentLevel;
-        if (xpProgress < 0) xpProgress = 0; // Ensure we don't show negative XP
+        int xpProgress = Math.max(currentXP, 0); // Ensure we don't show negative XP
 
-        int progressPercent = (int)(((double)xpProgress / xpNeeded) * 100);
+        int progressPercent = (int)(((double)xpProgress / xpForNextLevel) * 100);
         if (progressPercent < 0) progressPercent = 0;
         if (progressPercent > 100) progressPercent = 100;
 
@@ -163,7 +181,6 @@ public class ProgressScreen extends JFrame {
         levelProgress.setValue(progressPercent);
         levelProgress.setStringPainted(true);
 
-        // Use currentXP instead of xpProgress for the display text
         String progressText = currentXP + "/" + xpForNextLevel + " XP";
         levelProgress.setString(progressText);
 
@@ -172,8 +189,9 @@ public class ProgressScreen extends JFrame {
         levelProgress.setForeground(new Color(75, 0, 130)); // Indigo
 
         // Task completion progress
-        int totalTasks = user.getTasks().size();
-        long completedTasks = user.getTasks().stream().filter(Task::isCompleted).count();
+        TaskTotals totals = user.getTaskTotals();
+        int totalTasks = totals.getTasks() + archived.getTasks();
+        long completedTasks = totals.getCompleted() + archived.getTasks();
         int taskProgressPercent = totalTasks > 0 ? (int)((completedTasks * 100) / totalTasks) : 0;
 
         JLabel taskLabel = new JLabel("Task Completion");
@@ -256,23 +274,14 @@ public class ProgressScreen extends JFrame {
 
         // Create column names and table model for tasks
         String[] columnNames = {"Description", "Difficulty", "XP", "Coins", "Status", "Completion Date"};
-        Object[][] data = new Object[user.getTasks().size()][6];
+        DefaultTableModel tableModel = new DefaultTableModel(columnNames, 0);
 
-        // Fill data
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("MMM d, yyyy");
-        int i = 0;
+        // Fill data; archived tasks are only read when asked for, a page at a time
         for (Task task : user.getTasks()) {
-            data[i][0] = task.getDescription();
-            data[i][1] = task.getDifficulty();
-            data[i][2] = task.getXpReward();
-            data[i][3] = task.getCoinReward();
-            data[i][4] = task.isCompleted() ? "Completed" : "Pending";
-            data[i][5] = task.getCompletionDate() != null ?
-                    task.getCompletionDate().format(formatter) : "-";
-            i++;
+            tableModel.addRow(historyRow(task));
         }
 
-        JTable taskTable = new JTable(data, columnNames);
+        JTable taskTable = new JTable(tableModel);
         taskTable.setFont(new Font("Monospaced", Font.PLAIN, 14));
         taskTable.getTableHeader().setFont(labelFont);
         taskTable.setRowHeight(25);
@@ -289,9 +298,39 @@ public class ProgressScreen extends JFrame {
         panel.add(titleLabel, BorderLayout.NORTH);
         panel.add(scrollPane, BorderLayout.CENTER);
 
+        if (archived.getTasks() > 0) {
+            JButton olderButton = new JButton("Load older tasks (" + archived.getTasks() + " archived)");
+            olderButton.setFont(labelFont);
+            olderButton.addActionListener(e -> {
+                if (archivedHistory == null) {
+                    archivedHistory = DataManager.getArchive().history(user.getUsername());
+                }
+                for (Task task : archivedHistory.nextPage(HISTORY_PAGE_SIZE)) {
+                    tableModel.addRow(historyRow(task));
+                }
+                if (!archivedHistory.hasNext()) {
+                    olderButton.setText("All archived tasks loaded");
+                    olderButton.setEnabled(false);
+                }
+            });
+            panel.add(olderButton, BorderLayout.SOUTH);
+        }
+
         return panel;
     }
 
+    private Object[] historyRow(Task task) {
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("MMM d, yyyy");
+        return new Object[]{
+                task.getDescription(),
+                task.getDifficulty(),
+                task.getXpReward(),
+                task.getCoinReward(),
+                task.isCompleted() ? "Completed" : "Pending",
+                task.getCompletionDate() != null ? task.getCompletionDate().format(formatter) : "-"
+        };
+    }
+
     private JPanel createGoalsPanel() {
         JPanel panel = new JPanel();
         panel.setLayout(new BorderLayout(10, 10));
@@ -328,7 +367,7 @@ public class ProgressScreen extends JFrame {
         ));
 
         // Get the count of completed tasks
-        long completedTasks = user.getTasks().stream().filter(Task::isCompleted).count();
+        long completedTasks = user.getTaskTotals().getCompleted() + archived.getTasks();
 
         // Define achievement milestones
         String[][] achievements = {
@@ -452,15 +491,9 @@ public class ProgressScreen extends JFrame {
 
         // Count tasks by difficulty
         Map<Task.Difficulty, Integer> difficultyCount = new HashMap<>();
+        TaskTotals totals = user.getTaskTotals();
         for (Task.Difficulty diff : Task.Difficulty.values()) {
-            difficultyCount.put(diff, 0);
-        }
-
-        for (Task task : user.getTasks()) {
-            if (task.isCompleted()) {
-                Task.Difficulty diff = task.getDifficulty();
-                difficultyCount.put(diff, difficultyCount.get(diff) + 1);
-            }
+            difficultyCount.put(diff, archived.getTasks(diff) + totals.getCompleted(diff));
         }
 
         // Create labels for each difficulty
@@ -523,17 +556,10 @@ public class ProgressScreen extends JFrame {
         Map<Task.Difficulty, Integer> xpByDifficulty = new HashMap<>();
         Map<Task.Difficulty, Integer> coinsByDifficulty = new HashMap<>();
 
+        TaskTotals totals = user.getTaskTotals();
         for (Task.Difficulty diff : Task.Difficulty.values()) {
-            xpByDifficulty.put(diff, 0);
-            coinsByDifficulty.put(diff, 0);
-        }
-
-        for (Task task : user.getTasks()) {
-            if (task.isCompleted()) {
-                Task.Difficulty diff = task.getDifficulty();
-                xpByDifficulty.put(diff, xpByDifficulty.get(diff) + task.getXpReward());
-                coinsByDifficulty.put(diff, coinsByDifficulty.get(diff) + task.getCoinReward());
-            }
+            xpByDifficulty.put(diff, (int) (archived.getXp(diff) + totals.getCompletedXp(diff)));
+            coinsByDifficulty.put(diff, (int) (archived.getCoins(diff) + totals.getCompletedCoins(diff)));
         }
 
         // Create data for the table
@@ -601,29 +627,84 @@ public class ProgressScreen extends JFrame {
             BorderFactory.createEmptyBorder(10, 10, 10, 10)
         ));
 
-        // In a real implementation, this would analyze task completion dates
-        // to show study consistency over time
+        // Everything below is read from the per-day index, not from the tasks
+        CompletionCalendar calendar = user.getCompletionCalendar();
+        long today = LocalDate.now().toEpochDay();
+        int activeDays = calendar.getActiveDays();
+        long allTasks = calendar.getTasks(calendar.firstDay(), calendar.lastDay());
 
-        // For now, just show a placeholder message
-        JLabel placeholderLabel = new JLabel(
-            "<html><div style='text-align: center;'>" +
-            "Study consistency tracking will show your daily and weekly study patterns.<br><br>" +
-            "This feature would display a calendar heatmap showing days when you completed tasks.<br>" +
-            "It would also calculate your study streaks and average tasks per day.<br><br>" +
-            "Complete more tasks to see your study patterns emerge!" +
-            "</div></html>"
-        );
-        placeholderLabel.setFont(new Font("Monospaced", Font.PLAIN, 14));
-        placeholderLabel.setHorizontalAlignment(SwingConstants.CENTER);
+        String[] statNames = {
+            "Current Streak",
+            "Longest Streak",
+            "Last 7 Days",
+            "Last 30 Days",
+            "Average Per Study Day"
+        };
 
-        panel.add(placeholderLabel, BorderLayout.CENTER);
+        String[] statValues = {
+            calendar.getCurrentStreak(today) + " days",
+            calendar.getLongestStreak() + " days",
+            calendar.getTasks(today - 6, today) + " tasks, " + calendar.getXp(today - 6, today) + " XP",
+            calendar.getTasks(today - 29, today) + " tasks on " + calendar.getActiveDays(today - 29, today) + " days",
+            activeDays > 0 ? String.format("%.1f tasks", allTasks / (double) activeDays) : "N/A (no completed tasks)"
+        };
+
+        JPanel statsGrid = new JPanel(new GridLayout(statNames.length, 2, 10, 5));
+        statsGrid.setBackground(Color.WHITE);
+
+        for (int i = 0; i < statNames.length; i++) {
+            JLabel nameLabel = new JLabel(statNames[i]);
+            nameLabel.setFont(new Font("Monospaced", Font.BOLD, 14));
+
+            JLabel valueLabel = new JLabel(statValues[i]);
+            valueLabel.setFont(new Font("Monospaced", Font.PLAIN, 14));
+            valueLabel.setForeground(accentColor);
+
+            statsGrid.add(nameLabel);
+            statsGrid.add(valueLabel);
+        }
+
+        panel.add(statsGrid, BorderLayout.CENTER);
+        panel.add(createHeatmap(calendar, today), BorderLayout.SOUTH);
 
         return panel;
     }
 
-    // Helper method to calculate XP needed for a given level
-    private int calculateXPForLevel(int level) {
-        return (level * level * 100);
+    // The last HEATMAP_WEEKS weeks, one column per week and one row per weekday,
+    // shaded by how many tasks were completed that day
+    private JPanel createHeatmap(CompletionCalendar calendar, long today) {
+        JPanel grid = new JPanel(new GridLayout(7, HEATMAP_WEEKS, 2, 2));
+        grid.setBackground(backgroundColor);
+        grid.setBorder(BorderFactory.createEmptyBorder(10, 0, 0, 0));
+
+        // Column of today is the last one; start on the Monday HEATMAP_WEEKS - 1 weeks before
+        long start = today - (LocalDate.ofEpochDay(today).getDayOfWeek().getValue() - 1) - 7L * (HEATMAP_WEEKS - 1);
+        for (int weekday = 0; weekday < 7; weekday++) {
+            for (int week = 0; week < HEATMAP_WEEKS; week++) {
+                long day = start + 7L * week + weekday;
+                JPanel cell = new JPanel();
+                cell.setPreferredSize(new Dimension(14, 14));
+                if (day > today) {
+                    cell.setBackground(backgroundColor);
+                } else {
+                    int tasks = calendar.getTasks(day);
+                    cell.setBackground(heatColor(tasks));
+                    cell.setToolTipText(LocalDate.ofEpochDay(day) + ": " + tasks + " tasks, " + calendar.getXp(day) + " XP");
+                }
+                grid.add(cell);
+            }
+        }
+        return grid;
+    }
+
+    private Color heatColor(int tasks) {
+        if (tasks == 0) return Color.WHITE;
+        // Lighter to full accent color for 1 to 4+ tasks
+        float share = Math.min(tasks, 4) / 4f;
+        int r = 255 - Math.round((255 - accentColor.getRed()) * share);
+        int g = 255 - Math.round((255 - accentColor.getGreen()) * share);
+        int b = 255 - Math.round((255 - accentColor.getBlue()) * share);
+        return new Color(r, g, b);
     }
 
     private JPanel createAdvancedStatsPanel() {
@@ -637,22 +718,12 @@ public class ProgressScreen extends JFrame {
         ));
 
         // Calculate advanced statistics
-        double avgXpPerTask = 0;
-        double avgCoinsPerTask = 0;
-        int totalTasksCompleted = 0;
-        int totalHardTasksCompleted = 0;
-
-        for (Task task : user.getTasks()) {
-            if (task.isCompleted()) {
-                totalTasksCompleted++;
-                avgXpPerTask += task.getXpReward();
-                avgCoinsPerTask += task.getCoinReward();
-
-                if (task.getDifficulty() == Task.Difficulty.HARD) {
-                    totalHardTasksCompleted++;
-                }
-            }
-        }
+        TaskTotals totals = user.getTaskTotals();
+        double avgXpPerTask = archived.getXp() + totals.getCompletedXp();
+        double avgCoinsPerTask = archived.getCoins() + totals.getCompletedCoins();
+        int totalTasksCompleted = archived.getTasks() + totals.getCompleted();
+        int totalHardTasksCompleted = archived.getTasks(Task.Difficulty.HARD) + totals.getCompleted(Task.Difficulty.HARD);
+        int totalTasks = totals.getTasks() + archived.getTasks();
 
         if (totalTasksCompleted > 0) {
             avgXpPerTask /= totalTasksCompleted;
@@ -671,9 +742,9 @@ public class ProgressScreen extends JFrame {
         String[] statValues = {
             String.format("%.1f", avgXpPerTask),
             String.format("%.1f", avgCoinsPerTask),
-            totalTasksCompleted + "/" + user.getTasks().size() + " (" +
-                (user.getTasks().size() > 0 ?
-                    String.format("%.1f%%", (totalTasksCompleted * 100.0 / user.getTasks().size())) :
+            totalTasksCompleted + "/" + totalTasks + " (" +
+                (totalTasks > 0 ?
+                    String.format("%.1f%%", (totalTasksCompleted * 100.0 / totalTasks)) :
                     "0%") + ")",
             totalHardTasksCompleted + " tasks",
             estimateTimeToNextLevel() + " tasks"
@@ -702,19 +773,12 @@ public class ProgressScreen extends JFrame {
     private String estimateTimeToNextLevel() {
         int currentLevel = user.getLevel();
         int currentXP = user.getXp();
-        int xpForNextLevel = calculateXPForLevel(currentLevel + 1);
-        int xpNeeded = xpForNextLevel - currentXP;
+        long xpNeeded = user.xpNeeded(currentLevel) - currentXP;
 
         // Calculate average XP per completed task
-        double avgXpPerTask = 0;
-        int completedTasks = 0;
-
-        for (Task task : user.getTasks()) {
-            if (task.isCompleted()) {
-                avgXpPerTask += task.getXpReward();
-                completedTasks++;
-            }
-        }
+        TaskTotals totals = user.getTaskTotals();
+        double avgXpPerTask = archived.getXp() + totals.getCompletedXp();
+        int completedTasks = archived.getTasks() + totals.getCompleted();
 
         if (completedTasks > 0) {
             avgXpPerTask /= completedTasks;
@@ -65,6 +65,7 @@ public class RewardScreen extends JFrame {
         JButton buyButton = new JButton("Buy");
         buyButton.addActionListener(e -> {
             if (user.spendCoins(reward.getCost())) {
+                util.DataManager.recordCoinsSpent(user, reward.getCost());
                 JOptionPane.showMessageDialog(null, "You redeemed: " + reward.getName());
                 coinsLabel.setText("Coins: " + user.getCoins());
                 mainMenu.refreshStats();  // Updates MainMenu
@@ -0,0 +1,359 @@
+//util->SingleFileUserRepository
+package util;
+
+import models.User;
+import models.UserHeader;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+// Embedded store that keeps every user and password in a single log-structured file
+// (data/users.db). Saves append a record; an in-memory index maps each username to its
+// latest record. The file is rewritten without stale records once they take up more
+// space than the live ones; data/users.db.lock stays locked while the store is open, also
+// across that rewrite.
+//
+// Record: int length | byte kind | short name length | name | payload | int crc32
+// where length covers everything after itself, and the CRC covers kind..payload.
+public class SingleFileUserRepository implements UserRepository {
+    private static final byte KIND_USER = 1;
+    private static final byte KIND_PASSWORD = 2;
+    private static final long MIN_COMPACT_BYTES = 1024 * 1024;
+    // Bytes read for a header-only load: kind, name and the start of the payload
+    private static final int HEADER_PREFIX_BYTES = 1024;
+
+    private static final int MIN_RECORD_LENGTH = 1 + 2 + 4;
+
+    private final Path path;
+    private FileChannel lockChannel;
+    private FileChannel channel;
+    private final Map<String, Long> userOffsets = new HashMap<>();
+    private final Map<String, String> passwords = new HashMap<>();
+    private long liveBytes;
+    private long staleBytes;
+
+    public SingleFileUserRepository(File file) {
+        this.path = file.toPath();
+        try {
+            Files.createDirectories(path.getParent());
+            lock();
+            open();
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not open " + file, e);
+        }
+    }
+
+    @Override
+    public synchronized User load(String username) {
+        Long offset = userOffsets.get(username);
+        if (offset == null) return null;
+        try {
+            return BinaryUserCodec.decode(readRecord(offset).payload);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    // Reads the first bytes of the record only, so the CRC is not checked here; a full load still checks it
+    @Override
+    public synchronized UserHeader loadHeader(String username) {
+        Long offset = userOffsets.get(username);
+        if (offset == null) return null;
+        try {
+            ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+            readFully(lengthBuffer, offset);
+            ByteBuffer prefix = ByteBuffer.allocate(Math.min(lengthBuffer.getInt(0) - 4, HEADER_PREFIX_BYTES));
+            readFully(prefix, offset + 4);
+            int nameLength = prefix.getShort(1) & 0xFFFF;
+            byte[] payload = new byte[prefix.capacity() - 3 - nameLength];
+            prefix.get(3 + nameLength, payload);
+            // A long completion history can make the header outgrow the prefix
+            int needed = BinaryUserCodec.headerBytes(payload);
+            if (needed > payload.length) {
+                ByteBuffer header = ByteBuffer.allocate(needed);
+                readFully(header, offset + 4 + 3 + nameLength);
+                payload = header.array();
+            }
+            return BinaryUserCodec.decodeHeader(payload);
+        } catch (IOException | RuntimeException e) {
+            // Bad length or a very long name; fall back to reading the whole record
+            User user = load(username);
+            return user != null ? user.getHeader() : null;
+        }
+    }
+
+    @Override
+    public synchronized void save(User user) {
+        byte[] payload = BinaryUserCodec.encode(user);
+        try {
+            long offset = appendRecord(KIND_USER, user.getUsername(), payload);
+            channel.force(false);
+            Long previous = userOffsets.put(user.getUsername(), offset);
+            if (previous != null) retire(previous);
+            compactIfNeeded();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public synchronized boolean exists(String username) {
+        return passwords.containsKey(username);
+    }
+
+    @Override
+    public synchronized boolean verifyPassword(String username, String password) {
+        String stored = passwords.get(username);
+        return stored != null && CredentialStore.checkPassword(stored, password);
+    }
+
+    @Override
+    public synchronized void savePassword(String username, String password) {
+        savePasswordHash(username, CredentialStore.hashPassword(password));
+    }
+
+    @Override
+    public synchronized String loadPasswordHash(String username) {
+        return passwords.get(username);
+    }
+
+    @Override
+    public synchronized void savePasswordHash(String username, String hash) {
+        savePasswordHashes(Map.of(username, hash));
+    }
+
+    // Appends all the records, then syncs once
+    @Override
+    public synchronized void savePasswordHashes(Map<String, String> hashes) {
+        try {
+            for (Map.Entry<String, String> entry : hashes.entrySet()) {
+                byte[] hash = entry.getValue().getBytes(StandardCharsets.UTF_8);
+                appendRecord(KIND_PASSWORD, entry.getKey(), hash);
+                if (passwords.put(entry.getKey(), entry.getValue()) != null) {
+                    // Older password records are dropped at the next compaction
+                    staleBytes += encodeRecord(KIND_PASSWORD, entry.getKey(), hash).remaining();
+                }
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public synchronized List<String> listUsers() {
+        List<String> names = new ArrayList<>(userOffsets.keySet());
+        Collections.sort(names);
+        return names;
+    }
+
+    private static class Record {
+        byte kind;
+        String name;
+        byte[] payload;
+        long size;
+    }
+
+    private void open() throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long offset = 0;
+        long end = channel.size();
+        while (offset < end) {
+            Record record;
+            try {
+                record = readRecord(offset);
+            } catch (IOException e) {
+                if (!isTornTail(offset, end)) {
+                    // Damaged in the middle: the records after it are still good, so step over it
+                    long size = 4L + lengthAt(offset);
+                    System.out.println("⚠ Skipping damaged record in " + path.getFileName() + " at " + offset);
+                    staleBytes += size;
+                    offset += size;
+                    continue;
+                }
+                // Torn write at the tail from a crash; drop it
+                System.out.println("⚠ Truncating damaged tail of " + path.getFileName() + " at " + offset);
+                channel.truncate(offset);
+                break;
+            }
+            if (record.kind == KIND_USER) {
+                Long previous = userOffsets.put(record.name, offset);
+                if (previous != null) retire(previous);
+                liveBytes += record.size;
+            } else if (record.kind == KIND_PASSWORD) {
+                passwords.put(record.name, new String(record.payload, StandardCharsets.UTF_8));
+            }
+            offset += record.size;
+        }
+    }
+
+    // Whether the damaged record at offset is the last write, cut short by a crash: it runs to
+    // the end of the file, or its length is garbage and only zeros follow (the file grew but the
+    // data never made it). A garbage length with data after it means the rest cannot be found,
+    // so rather than truncate good records the store refuses to open.
+    private boolean isTornTail(long offset, long end) throws IOException {
+        if (offset + 4 > end) return true;
+        int length = lengthAt(offset);
+        if (length >= MIN_RECORD_LENGTH) return offset + 4 + length >= end;
+        ByteBuffer rest = ByteBuffer.allocate((int) Math.min(end - offset, 1 << 20));
+        for (long position = offset; position < end; position += rest.capacity()) {
+            rest.clear();
+            rest.limit((int) Math.min(rest.capacity(), end - position));
+            readFully(rest, position);
+            for (int i = 0; i < rest.limit(); i++) {
+                if (rest.get(i) != 0) {
+                    throw new IOException("Damaged record length in " + path.getFileName() + " at " + offset
+                            + " with records after it; not opening it");
+                }
+            }
+        }
+        return true;
+    }
+
+    private int lengthAt(long offset) throws IOException {
+        ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+        readFully(lengthBuffer, offset);
+        return lengthBuffer.getInt(0);
+    }
+
+    // Only one process may have the store open; its in-memory index would go stale otherwise.
+    // The lock is on a file of its own, held until exit, so a compaction can replace the store.
+    private void lock() throws IOException {
+        Path lockFile = path.resolveSibling(path.getFileName() + ".lock");
+        lockChannel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        if (lockChannel.tryLock() == null) {
+            lockChannel.close();
+            throw new IOException(path.getFileName() + " is in use by another process");
+        }
+    }
+
+    private Record readRecord(long offset) throws IOException {
+        ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+        readFully(lengthBuffer, offset);
+        int length = lengthBuffer.getInt(0);
+        if (length < MIN_RECORD_LENGTH || offset + 4 + length > channel.size()) {
+            throw new IOException("Bad record length at " + offset);
+        }
+
+        ByteBuffer body = ByteBuffer.allocate(length);
+        readFully(body, offset + 4);
+        body.flip();
+
+        CRC32 crc = new CRC32();
+        crc.update(body.array(), 0, length - 4);
+        if ((int) crc.getValue() != body.getInt(length - 4)) {
+            throw new IOException("Checksum mismatch at " + offset);
+        }
+
+        Record record = new Record();
+        record.kind = body.get();
+        byte[] name = new byte[body.getShort() & 0xFFFF];
+        body.get(name);
+        record.name = new String(name, StandardCharsets.UTF_8);
+        record.payload = new byte[length - 4 - 1 - 2 - name.length];
+        body.get(record.payload);
+        record.size = 4L + length;
+        return record;
+    }
+
+    private long appendRecord(byte kind, String name, byte[] payload) throws IOException {
+        ByteBuffer buffer = encodeRecord(kind, name, payload);
+        long offset = channel.size();
+        if (kind == KIND_USER) liveBytes += buffer.remaining();
+        writeFully(channel, buffer, offset);
+        return offset;
+    }
+
+    private static ByteBuffer encodeRecord(byte kind, String name, byte[] payload) {
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        int length = 1 + 2 + nameBytes.length + payload.length + 4;
+        ByteBuffer buffer = ByteBuffer.allocate(4 + length);
+        buffer.putInt(length);
+        buffer.put(kind);
+        buffer.putShort((short) nameBytes.length);
+        buffer.put(nameBytes);
+        buffer.put(payload);
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 4, length - 4);
+        buffer.putInt((int) crc.getValue());
+        buffer.flip();
+        return buffer;
+    }
+
+    // Marks the user record at offset as superseded; only its length prefix is read
+    private void retire(long offset) throws IOException {
+        ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+        readFully(lengthBuffer, offset);
+        long size = 4L + lengthBuffer.getInt(0);
+        liveBytes -= size;
+        staleBytes += size;
+    }
+
+    private void compactIfNeeded() throws IOException {
+        if (staleBytes < MIN_COMPACT_BYTES || staleBytes < liveBytes) return;
+
+        System.out.println("Compacting " + path.getFileName() + " (" + staleBytes + " stale bytes)");
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        Map<String, Long> newOffsets = new HashMap<>();
+        long userBytes = 0;
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            long position = 0;
+            for (Map.Entry<String, String> entry : passwords.entrySet()) {
+                position += writeFully(out, encodeRecord(KIND_PASSWORD, entry.getKey(),
+                        entry.getValue().getBytes(StandardCharsets.UTF_8)), position);
+            }
+            for (Map.Entry<String, Long> entry : userOffsets.entrySet()) {
+                newOffsets.put(entry.getKey(), position);
+                long written = writeFully(out, encodeRecord(KIND_USER, entry.getKey(),
+                        readRecord(entry.getValue()).payload), position);
+                position += written;
+                userBytes += written;
+            }
+            out.force(true);
+        }
+
+        channel.close();
+        try {
+            Files.move(tmp, path, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+        channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        userOffsets.clear();
+        userOffsets.putAll(newOffsets);
+        liveBytes = userBytes;
+        staleBytes = 0;
+    }
+
+    private static long writeFully(FileChannel target, ByteBuffer buffer, long position) throws IOException {
+        long written = 0;
+        while (buffer.hasRemaining()) {
+            written += target.write(buffer, position + written);
+        }
+        return written;
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position);
+            if (n < 0) throw new IOException("Unexpected end of " + path.getFileName());
+            position += n;
+        }
+    }
+}
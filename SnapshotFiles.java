@@ -0,0 +1,120 @@
+//util->SnapshotFiles
+package util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+// Crash-safe whole-file writes for snapshot files (user data, users.json).
+// Content goes to <file>.tmp, is fsynced, and is then atomically renamed over the live file
+// (and the directory fsynced); the previous generation is kept as <file>.bak. A trailing "#crc32:" line lets readers detect torn files.
+public class SnapshotFiles {
+    private static final byte[] TRAILER_PREFIX = "\n#crc32:".getBytes(StandardCharsets.US_ASCII);
+    private static final int TRAILER_LENGTH = TRAILER_PREFIX.length + 8 + 1; // prefix + hex + newline
+
+    public static void write(File file, byte[] content) throws IOException {
+        Path live = file.toPath();
+        Path tmp = sibling(file, ".tmp");
+        Path bak = sibling(file, ".bak");
+
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        byte[] trailer = (new String(TRAILER_PREFIX, StandardCharsets.US_ASCII)
+                + String.format("%08x", crc.getValue()) + "\n").getBytes(StandardCharsets.US_ASCII);
+
+        Files.createDirectories(tmp.getParent());
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.wrap(content);
+            while (buffer.hasRemaining()) channel.write(buffer);
+            buffer = ByteBuffer.wrap(trailer);
+            while (buffer.hasRemaining()) channel.write(buffer);
+            channel.force(true);
+        }
+
+        // The live file stays in place until the rename replaces it, so readers always find
+        // the current or the new generation; .bak becomes a second name for the current one
+        if (Files.exists(live)) {
+            keepPrevious(live, bak);
+        }
+        try {
+            Files.move(tmp, live, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, live, StandardCopyOption.REPLACE_EXISTING);
+        }
+        syncDirectory(live.toAbsolutePath().getParent());
+    }
+
+    private static void keepPrevious(Path live, Path bak) throws IOException {
+        Files.deleteIfExists(bak);
+        try {
+            Files.createLink(bak, live);
+        } catch (UnsupportedOperationException | IOException e) {
+            // File systems without hard links
+            Files.copy(live, bak, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    // Makes the renames durable; not every platform can open a directory for this
+    private static void syncDirectory(Path dir) {
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Windows cannot fsync a directory; the rename is as durable as it gets there
+        }
+    }
+
+    // Returns the verified content of the newest good generation, or null if there is none
+    public static byte[] read(File file) throws IOException {
+        byte[] content = readVerified(file.toPath());
+        if (content != null) return content;
+
+        Path bak = sibling(file, ".bak");
+        content = readVerified(bak);
+        if (content != null) {
+            System.out.println("⚠ " + file.getName() + " is missing or damaged, using previous generation");
+        }
+        return content;
+    }
+
+    public static boolean exists(File file) {
+        return file.exists() || Files.exists(sibling(file, ".bak"));
+    }
+
+    private static byte[] readVerified(Path path) throws IOException {
+        if (!Files.exists(path)) return null;
+        byte[] data = Files.readAllBytes(path);
+
+        int start = data.length - TRAILER_LENGTH;
+        if (start < 0 || !Arrays.equals(data, start, start + TRAILER_PREFIX.length,
+                TRAILER_PREFIX, 0, TRAILER_PREFIX.length)) {
+            // Written before checksums were added; nothing to verify
+            return data;
+        }
+
+        byte[] content = Arrays.copyOf(data, start);
+        String hex = new String(data, start + TRAILER_PREFIX.length, 8, StandardCharsets.US_ASCII);
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        try {
+            if (Long.parseLong(hex, 16) == crc.getValue()) return content;
+        } catch (NumberFormatException ignored) {
+            // fall through to the mismatch case
+        }
+        System.out.println("⚠ Checksum mismatch in " + path.getFileName());
+        return null;
+    }
+
+    private static Path sibling(File file, String suffix) {
+        return new File(file.getPath() + suffix).toPath();
+    }
+}
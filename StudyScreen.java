@@ -4,12 +4,14 @@ import models.Task;
 import util.DataManager;
 import util.TaskSelector;
 import util.ThemeManager;
+import util.UserChangeListener;
 
 import javax.swing.*;
 import java.awt.*;
 import java.util.List;
 
 public class StudyScreen extends JFrame {
+    private static final int RECOMMENDED_TASKS = 10;
     private final DefaultListModel<Task> taskListModel = new DefaultListModel<>();
     private final DefaultListModel<Task> recommendedListModel = new DefaultListModel<>();
     private final JList<Task> taskList = new JList<>(taskListModel);
@@ -18,6 +20,7 @@ public class StudyScreen extends JFrame {
     private final models.User user;
     private StudyTimerPanel timerPanel; // Added timer panel
     private final ThemeManager themeManager = ThemeManager.getInstance();
+    private final UserChangeListener changeListener = this::userChanged;
 
     public StudyScreen(MainMenu mainMenu) {
         this.mainMenu = mainMenu;
@@ -38,8 +41,15 @@ public class StudyScreen extends JFrame {
                 if (timerPanel != null) {
                     timerPanel.stopTimer();
                 }
+                DataManager.requestFlush();
+            }
+
+            @Override
+            public void windowClosed(java.awt.event.WindowEvent windowEvent) {
+                DataManager.removeChangeListener(changeListener);
             }
         });
+        DataManager.addChangeListener(changeListener);
 
         // Add a theme change listener that will refresh the timer panel
         themeManager.addThemeChangeListener(e -> refreshTheme());
@@ -120,7 +130,7 @@ public class StudyScreen extends JFrame {
                     taskListModel.addElement(task);
                     taskField.setText("");
                     updateRecommendedList();
-                    DataManager.saveUser(user);
+                    DataManager.recordTaskAdded(user, task);
                 }
             } catch (Exception ex) {
                 JOptionPane.showMessageDialog(this, "XP and coins must be numbers.");
@@ -130,10 +140,7 @@ public class StudyScreen extends JFrame {
         completeTask.addActionListener(e -> {
             Task task = taskList.getSelectedValue();
             if (task != null && !task.isCompleted()) {
-                task.setCompleted(true);
-                user.addXP(task.getXpReward());
-                user.addCoins(task.getCoinReward());
-                user.incrementCompletedTasksCounter(); // Increment the completed tasks counter
+                user.completeTask(task); // Rewards, the completed tasks counter and the task totals
 
                 JOptionPane.showMessageDialog(this,
                         "Task Completed! + " + task.getXpReward() + " XP, + " + task.getCoinReward() + " Coins");
@@ -141,7 +148,7 @@ public class StudyScreen extends JFrame {
                 recommendedList.repaint();
                 mainMenu.refreshStats();
                 updateRecommendedList();
-                DataManager.saveUser(user);
+                DataManager.recordTaskCompleted(user, task);
 
                 // Upload stats to Firebase leaderboard whenever a task is completed
                 util.FirebaseManager.uploadUserStats(user);
@@ -154,7 +161,7 @@ public class StudyScreen extends JFrame {
                 user.getTasks().remove(task);
                 taskListModel.removeElement(task);
                 updateRecommendedList();
-                DataManager.saveUser(user);
+                DataManager.recordTaskDeleted(user, task);
             }
         });
 
@@ -164,15 +171,45 @@ public class StudyScreen extends JFrame {
         setVisible(true);
     }
 
-    private void updateRecommendedList() {
-        recommendedListModel.clear();
+    // The user was changed on disk by someone else; merge it in and update the lists in place
+    private void userChanged(String username) {
+        if (!username.equals(user.getUsername())) return;
+        SwingUtilities.invokeLater(() -> {
+            DataManager.refreshUser(user);
+            syncTaskList();
+            updateRecommendedList();
+            mainMenu.refreshStats();
+        });
+    }
 
-        // Use the new prioritizeTasks method to get tasks sorted by priority
-        List<Task> prioritizedTasks = TaskSelector.prioritizeTasks(user.getTasks());
+    // Only the rows whose task changed are touched; unchanged tasks are the same objects
+    // (with studyleveling.taskStore=columnar every get() is a fresh row view, so all are reset)
+    private void syncTaskList() {
+        List<Task> tasks = user.getTasks();
+        for (int i = 0; i < tasks.size(); i++) {
+            if (i >= taskListModel.size()) {
+                taskListModel.addElement(tasks.get(i));
+            } else if (taskListModel.get(i) != tasks.get(i)) {
+                taskListModel.set(i, tasks.get(i));
+            }
+        }
+        if (taskListModel.size() > tasks.size()) {
+            taskListModel.removeRange(tasks.size(), taskListModel.size() - 1);
+        }
+    }
 
-        // Add prioritized tasks to the recommended list
-        for (Task task : prioritizedTasks) {
-            recommendedListModel.addElement(task);
+    // The best few open tasks, from the user's priority index; only changed rows are touched
+    private void updateRecommendedList() {
+        List<Task> recommended = TaskSelector.topTasks(user, RECOMMENDED_TASKS);
+        for (int i = 0; i < recommended.size(); i++) {
+            if (i >= recommendedListModel.size()) {
+                recommendedListModel.addElement(recommended.get(i));
+            } else if (recommendedListModel.get(i) != recommended.get(i)) {
+                recommendedListModel.set(i, recommended.get(i));
+            }
+        }
+        if (recommendedListModel.size() > recommended.size()) {
+            recommendedListModel.removeRange(recommended.size(), recommendedListModel.size() - 1);
         }
     }
 
@@ -3,6 +3,7 @@ package models;
 import java.time.LocalDate;
 
 public class Task {
+    private long id; // unique within its user's task list; 0 until the list assigns one
     private String description;
     private int xpReward;
     private int coinReward;
@@ -33,6 +34,28 @@ public class Task {
         this.completionDate = null;
     }
 
+    // Keeps the id, so a copy still refers to the same task of the same user.
+    // Reads through the getters, so it also copies the row views of TaskColumns
+    public Task(Task other) {
+        this.id = other.getId();
+        this.description = other.getDescription();
+        this.xpReward = other.getXpReward();
+        this.coinReward = other.getCoinReward();
+        this.difficulty = other.getDifficulty();
+        this.completed = other.isCompleted();
+        this.completionDate = other.getCompletionDate();
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    // For decoders and journal replay only: User assigns ids to tasks added without one,
+    // and must not see the id of a task already in its list change
+    public void setId(long id) {
+        this.id = id;
+    }
+
     public String getDescription() {
         return description;
     }
@@ -45,14 +68,16 @@ public class Task {
         return coinReward;
     }
 
+    // Never null: the constructors default it, and stored files missing it are migrated on load
     public Difficulty getDifficulty() {
-        return (difficulty != null) ? difficulty : Difficulty.EASY;
+        return difficulty;
     }
 
     public boolean isCompleted() {
         return completed;
     }
 
+    // For a task already in a user's list use User.markCompleted, which also updates its totals
     public void setCompleted(boolean completed) {
         this.completed = completed;
 
@@ -72,7 +97,7 @@ public class Task {
 
     @Override
     public String toString() {
-        String status = completed ? "✓" : "○";
-        return status + " " + description + " [" + difficulty + "] ⭐" + xpReward + " 💰" + coinReward;
+        String status = isCompleted() ? "✓" : "○";
+        return status + " " + getDescription() + " [" + getDifficulty() + "] ⭐" + getXpReward() + " 💰" + getCoinReward();
     }
 }
\ No newline at end of file
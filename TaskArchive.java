@@ -0,0 +1,346 @@
+//util->TaskArchive
+package util;
+
+import com.google.gson.Gson;
+import com.google.gson.Strictness;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import models.Task;
+import models.User;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+// Cold storage for old completed tasks, so a user's snapshot only holds active and recent ones.
+// Each archive run writes one gzipped segment of tasks (one JSON object per line) under
+// data/archive/<shard>/<username>/, plus a small summary with the totals the progress
+// screen needs, so nothing has to read the segments unless the history is paged through.
+// The user's snapshot records how many segments it has already dropped the tasks of
+// (User.getArchivedSegments), so a run interrupted before that snapshot was saved is
+// finished on the next load instead of archiving the same tasks again.
+public class TaskArchive {
+    private static final String SEGMENT_SUFFIX = ".ndjson.gz";
+    private static final String SUMMARY_FILE = "summary.json";
+
+    private static final Gson gson = UserJson.create();
+    private static final Gson summaryGson = new Gson();
+
+    private final DataLayout layout;
+    private final int archiveAfterDays;
+
+    // Totals over everything archived for one user; every archived task is completed
+    public static class Summary {
+        int segments;
+        int[] tasks = new int[Task.Difficulty.values().length];
+        long[] xp = new long[Task.Difficulty.values().length];
+        long[] coins = new long[Task.Difficulty.values().length];
+
+        public int getTasks() {
+            return Arrays.stream(tasks).sum();
+        }
+
+        public int getTasks(Task.Difficulty difficulty) {
+            return tasks[difficulty.ordinal()];
+        }
+
+        public long getXp() {
+            return Arrays.stream(xp).sum();
+        }
+
+        public long getXp(Task.Difficulty difficulty) {
+            return xp[difficulty.ordinal()];
+        }
+
+        public long getCoins() {
+            return Arrays.stream(coins).sum();
+        }
+
+        public long getCoins(Task.Difficulty difficulty) {
+            return coins[difficulty.ordinal()];
+        }
+
+        void add(Task task) {
+            int d = task.getDifficulty().ordinal();
+            tasks[d]++;
+            xp[d] += task.getXpReward();
+            coins[d] += task.getCoinReward();
+        }
+    }
+
+    // archiveAfterDays <= 0 turns archiving off; existing archives can still be read
+    public TaskArchive(File root, int archiveAfterDays) {
+        this.layout = new DataLayout(root, "");
+        this.archiveAfterDays = archiveAfterDays;
+    }
+
+    // Moves completed tasks older than the cutoff out of the user into a new segment.
+    // Returns true if the user changed and should be saved.
+    public synchronized boolean archiveOld(User user) {
+        if (archiveAfterDays <= 0) return false;
+        LocalDate cutoff = LocalDate.now().minusDays(archiveAfterDays);
+        // Answered from the header if possible, so a user loaded header-first keeps its tasks unread.
+        // Tasks of an unfinished run are old too, so this also skips users with nothing to finish.
+        if (user.getOldestCompletionDay() >= cutoff.toEpochDay()) return false;
+
+        String username = user.getUsername();
+        File dir = userDir(username);
+        int written = segments(dir).size();
+        boolean changed = finishArchived(user, dir, written);
+
+        List<Task> old = new ArrayList<>();
+        for (Task task : user.getTasks()) {
+            if (task.isCompleted() && task.getCompletionDate() != null && task.getCompletionDate().isBefore(cutoff)) {
+                old.add(task);
+            }
+        }
+        if (old.isEmpty()) return changed;
+
+        try {
+            Summary summary = summary(username);
+            File segment = new File(dir, String.format("%06d", written + 1) + SEGMENT_SUFFIX);
+            writeSegment(segment, old);
+            for (Task task : old) {
+                summary.add(task);
+            }
+            summary.segments = written + 1;
+            writeSummary(dir, summary);
+        } catch (IOException e) {
+            // Nothing removed from the user, so nothing is lost; try again next time
+            e.printStackTrace();
+            return changed;
+        }
+
+        // By id, so the list is filtered in one pass rather than searched once per archived task
+        Set<Long> ids = new HashSet<>();
+        for (Task task : old) {
+            ids.add(task.getId());
+        }
+        user.getTasks().removeIf(task -> ids.contains(task.getId()));
+        user.setArchivedSegments(written + 1);
+        System.out.println("Archived " + old.size() + " tasks for " + username);
+        return true;
+    }
+
+    // Drops the tasks of segments written after the user's snapshot last recorded one: the run
+    // that wrote them did not get to save the user. Returns true if the user changed.
+    private boolean finishArchived(User user, File dir, int written) {
+        int recorded = user.getArchivedSegments();
+        if (recorded == written) return false;
+        if (recorded < 0 || recorded > written) {
+            // Stored before segments were recorded, or the archive was removed: take it as it is
+            user.setArchivedSegments(written);
+            return true;
+        }
+        Set<Long> ids = new HashSet<>();
+        for (File segment : segments(dir).subList(recorded, written)) {
+            try (SegmentReader reader = new SegmentReader(segment)) {
+                Task task;
+                while ((task = reader.next()) != null) {
+                    ids.add(task.getId());
+                }
+            } catch (IOException e) {
+                // Leave the user as it is and look again next time
+                e.printStackTrace();
+                return false;
+            }
+        }
+        user.getTasks().removeIf(task -> ids.contains(task.getId()));
+        user.setArchivedSegments(written);
+        System.out.println("Finished archiving " + ids.size() + " tasks for " + user.getUsername());
+        return true;
+    }
+
+    // Replaces everything archived for the user with these tasks, in one segment (restoring a
+    // backup). Returns the number of segments now archived, for User.setArchivedSegments.
+    public synchronized int replace(String username, List<Task> tasks) throws IOException {
+        File dir = userDir(username);
+        if (tasks.isEmpty() && !dir.exists()) return 0;
+        for (File segment : segments(dir)) {
+            Files.delete(segment.toPath());
+        }
+        Summary summary = new Summary();
+        if (!tasks.isEmpty()) {
+            writeSegment(new File(dir, String.format("%06d", 1) + SEGMENT_SUFFIX), tasks);
+            for (Task task : tasks) {
+                summary.add(task);
+            }
+            summary.segments = 1;
+        }
+        writeSummary(dir, summary);
+        return summary.segments;
+    }
+
+    // Totals for everything archived; rebuilt from the segments if the summary is missing or stale
+    public synchronized Summary summary(String username) {
+        File dir = userDir(username);
+        List<File> segments = segments(dir);
+        try {
+            byte[] data = SnapshotFiles.read(new File(dir, SUMMARY_FILE));
+            if (data != null) {
+                Summary summary = summaryGson.fromJson(new String(data, StandardCharsets.UTF_8), Summary.class);
+                if (summary != null && summary.segments == segments.size()) return summary;
+            }
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+        }
+
+        Summary summary = new Summary();
+        for (File segment : segments) {
+            try (SegmentReader reader = new SegmentReader(segment)) {
+                Task task;
+                while ((task = reader.next()) != null) {
+                    summary.add(task);
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        summary.segments = segments.size();
+        return summary;
+    }
+
+    // Archived tasks, newest segment first, read one task at a time. Close it when done.
+    public History history(String username) {
+        List<File> segments = segments(userDir(username));
+        Collections.reverse(segments);
+        return new History(segments);
+    }
+
+    public static class History implements Iterator<Task>, Closeable {
+        private final Iterator<File> segments;
+        private SegmentReader reader;
+        private Task next;
+
+        History(List<File> segments) {
+            this.segments = segments.iterator();
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null) {
+                try {
+                    if (reader != null) {
+                        next = reader.next();
+                        if (next != null) break;
+                        reader.close();
+                        reader = null;
+                    }
+                    if (!segments.hasNext()) return false;
+                    reader = new SegmentReader(segments.next());
+                } catch (IOException e) {
+                    // Skip the rest of a damaged segment
+                    e.printStackTrace();
+                    closeQuietly();
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public Task next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            Task task = next;
+            next = null;
+            return task;
+        }
+
+        // Up to max more tasks
+        public List<Task> nextPage(int max) {
+            List<Task> page = new ArrayList<>();
+            while (page.size() < max && hasNext()) {
+                page.add(next());
+            }
+            return page;
+        }
+
+        @Override
+        public void close() {
+            closeQuietly();
+        }
+
+        private void closeQuietly() {
+            if (reader == null) return;
+            try {
+                reader.close();
+            } catch (IOException ignored) {
+            }
+            reader = null;
+        }
+    }
+
+    private static class SegmentReader implements Closeable {
+        private final JsonReader in;
+
+        SegmentReader(File segment) throws IOException {
+            in = new JsonReader(new InputStreamReader(new GZIPInputStream(
+                    new BufferedInputStream(new FileInputStream(segment))), StandardCharsets.UTF_8));
+            in.setStrictness(Strictness.LENIENT); // one top-level object per line
+        }
+
+        Task next() throws IOException {
+            if (in.peek() == JsonToken.END_DOCUMENT) return null;
+            return gson.getAdapter(Task.class).read(in);
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    private static void writeSummary(File dir, Summary summary) throws IOException {
+        dir.mkdirs();
+        SnapshotFiles.write(new File(dir, SUMMARY_FILE), summaryGson.toJson(summary).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void writeSegment(File segment, List<Task> tasks) throws IOException {
+        File tmp = new File(segment.getParentFile(), segment.getName() + ".tmp");
+        segment.getParentFile().mkdirs();
+        try (FileOutputStream file = new FileOutputStream(tmp)) {
+            GZIPOutputStream gzip = new GZIPOutputStream(new BufferedOutputStream(file));
+            Writer writer = new OutputStreamWriter(gzip, StandardCharsets.UTF_8);
+            for (Task task : tasks) {
+                writer.write(gson.toJson(task, Task.class)); // Task.class: the list may hold TaskColumns rows
+                writer.write('\n');
+            }
+            writer.flush();
+            gzip.finish();
+            gzip.flush();
+            file.getChannel().force(true);
+        }
+        try {
+            Files.move(tmp.toPath(), segment.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp.toPath(), segment.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private File userDir(String username) {
+        return new File(layout.shardDir(username), username);
+    }
+
+    // Segment files in write order (their names are zero-padded sequence numbers)
+    private static List<File> segments(File dir) {
+        List<File> segments = new ArrayList<>();
+        File[] files = dir.listFiles((d, name) -> name.endsWith(SEGMENT_SUFFIX));
+        if (files != null) {
+            segments.addAll(Arrays.asList(files));
+            segments.sort(null);
+        }
+        return segments;
+    }
+}
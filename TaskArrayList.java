@@ -0,0 +1,222 @@
+package models;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+// The task list User keeps by default. Readers never block and iterate the list as it was,
+// like a copy-on-write list, but adding at the end does not copy it: readers work on an
+// immutable Items snapshot, and appends fill spare capacity that older snapshots do not see
+// (as TaskColumns does). Every other structural change builds one new array, the same O(n)
+// an ArrayList spends shifting; they are rare next to adding and completing. Writers lock.
+final class TaskArrayList extends AbstractList<Task> implements RandomAccess {
+    private static final Task[] NONE = new Task[0];
+
+    private volatile Items current = new Items(NONE, 0);
+
+    private static final class Items {
+        final Task[] tasks; // slots from size on belong to later snapshots
+        final int size;
+
+        Items(Task[] tasks, int size) {
+            this.tasks = tasks;
+            this.size = size;
+        }
+    }
+
+    TaskArrayList() {
+    }
+
+    TaskArrayList(Collection<? extends Task> tasks) {
+        Task[] copy = tasks.toArray(NONE);
+        current = new Items(copy, copy.length);
+    }
+
+    @Override
+    public Task get(int index) {
+        Items c = current;
+        Objects.checkIndex(index, c.size);
+        return c.tasks[index];
+    }
+
+    @Override
+    public int size() {
+        return current.size;
+    }
+
+    @Override
+    public synchronized boolean add(Task task) {
+        Items c = current;
+        Task[] tasks = c.size < c.tasks.length ? c.tasks : grow(c, c.size + 1);
+        tasks[c.size] = task;
+        current = new Items(tasks, c.size + 1);
+        return true;
+    }
+
+    @Override
+    public synchronized void add(int index, Task task) {
+        Items c = current;
+        if (index == c.size) {
+            add(task);
+            return;
+        }
+        Objects.checkIndex(index, c.size);
+        Task[] tasks = new Task[c.size + 1];
+        System.arraycopy(c.tasks, 0, tasks, 0, index);
+        tasks[index] = task;
+        System.arraycopy(c.tasks, index, tasks, index + 1, c.size - index);
+        current = new Items(tasks, tasks.length);
+    }
+
+    @Override
+    public synchronized boolean addAll(Collection<? extends Task> added) {
+        return addAll(current.size, added);
+    }
+
+    @Override
+    public synchronized boolean addAll(int index, Collection<? extends Task> added) {
+        Items c = current;
+        if (index < 0 || index > c.size) throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + c.size);
+        Task[] more = added.toArray(NONE);
+        if (more.length == 0) return false;
+        int size = c.size + more.length;
+        Task[] tasks;
+        if (index == c.size) {
+            tasks = size <= c.tasks.length ? c.tasks : grow(c, size);
+        } else {
+            tasks = new Task[size];
+            System.arraycopy(c.tasks, 0, tasks, 0, index);
+            System.arraycopy(c.tasks, index, tasks, index + more.length, c.size - index);
+        }
+        System.arraycopy(more, 0, tasks, index, more.length);
+        current = new Items(tasks, size);
+        return true;
+    }
+
+    @Override
+    public synchronized Task set(int index, Task task) {
+        Items c = current;
+        Objects.checkIndex(index, c.size);
+        Task[] tasks = Arrays.copyOf(c.tasks, c.size);
+        Task old = tasks[index];
+        tasks[index] = task;
+        current = new Items(tasks, tasks.length);
+        return old;
+    }
+
+    @Override
+    public synchronized Task remove(int index) {
+        Items c = current;
+        Objects.checkIndex(index, c.size);
+        Task old = c.tasks[index];
+        Task[] tasks = new Task[c.size - 1];
+        System.arraycopy(c.tasks, 0, tasks, 0, index);
+        System.arraycopy(c.tasks, index + 1, tasks, index, c.size - index - 1);
+        current = new Items(tasks, tasks.length);
+        return old;
+    }
+
+    @Override
+    public synchronized boolean remove(Object o) {
+        int index = indexOf(o);
+        if (index < 0) return false;
+        remove(index);
+        return true;
+    }
+
+    // The filter sees each task once
+    @Override
+    public synchronized boolean removeIf(Predicate<? super Task> filter) {
+        Items c = current;
+        Task[] kept = new Task[c.size];
+        int n = 0;
+        for (int i = 0; i < c.size; i++) {
+            if (!filter.test(c.tasks[i])) kept[n++] = c.tasks[i];
+        }
+        if (n == c.size) return false;
+        current = new Items(kept, n);
+        return true;
+    }
+
+    @Override
+    public synchronized void clear() {
+        current = new Items(NONE, 0);
+    }
+
+    @Override
+    public synchronized void sort(Comparator<? super Task> comparator) {
+        Items c = current;
+        Task[] tasks = Arrays.copyOf(c.tasks, c.size);
+        Arrays.sort(tasks, comparator);
+        current = new Items(tasks, tasks.length);
+    }
+
+    @Override
+    public synchronized void replaceAll(UnaryOperator<Task> operator) {
+        Items c = current;
+        Task[] tasks = Arrays.copyOf(c.tasks, c.size);
+        for (int i = 0; i < tasks.length; i++) {
+            tasks[i] = operator.apply(tasks[i]);
+        }
+        current = new Items(tasks, tasks.length);
+    }
+
+    // Iterates the tasks as they are now, whatever changes meanwhile
+    @Override
+    public Iterator<Task> iterator() {
+        return Spliterators.iterator(spliterator());
+    }
+
+    @Override
+    public Spliterator<Task> spliterator() {
+        Items c = current;
+        return Spliterators.spliterator(c.tasks, 0, c.size, Spliterator.ORDERED | Spliterator.IMMUTABLE);
+    }
+
+    @Override
+    public Object[] toArray() {
+        Items c = current;
+        return Arrays.copyOf(c.tasks, c.size, Object[].class);
+    }
+
+    @Override
+    public <T> T[] toArray(T[] a) {
+        Items c = current;
+        T[] result = a.length >= c.size ? a : Arrays.copyOf(a, c.size);
+        System.arraycopy(c.tasks, 0, result, 0, c.size);
+        if (result.length > c.size) result[c.size] = null;
+        return result;
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        Items c = current;
+        for (int i = 0; i < c.size; i++) {
+            if (Objects.equals(o, c.tasks[i])) return i;
+        }
+        return -1;
+    }
+
+    @Override
+    public int lastIndexOf(Object o) {
+        Items c = current;
+        for (int i = c.size - 1; i >= 0; i--) {
+            if (Objects.equals(o, c.tasks[i])) return i;
+        }
+        return -1;
+    }
+
+    // Half as much again, so n appends copy O(n) tasks in all
+    private static Task[] grow(Items c, int needed) {
+        int capacity = Math.max(needed, Math.max(8, c.tasks.length + (c.tasks.length >> 1)));
+        return Arrays.copyOf(c.tasks, capacity);
+    }
+}
@@ -0,0 +1,524 @@
+package models;
+
+import java.time.LocalDate;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+// Task list kept as primitive columns instead of one object per task: ids, rewards, a
+// difficulty byte, the completion day and a completed bit per task, and each distinct
+// description stored once. Used by User for huge task histories (studyleveling.taskStore=columnar).
+//
+// get() returns a small view of a row (a Task whose getters read the columns); views of
+// the same task are equal. Like TaskArrayList, the default list, readers never block:
+// they work on an immutable Columns snapshot, appends fill spare capacity that older
+// snapshots do not see, and every other structural change builds new arrays. Completing
+// a task writes its row in place, as setCompleted does on a Task object. Writers lock.
+// Every task added must have an id > 0 that no other row has (User assigns them).
+public final class TaskColumns extends AbstractList<Task> implements RandomAccess {
+    private static final int NO_DAY = Integer.MIN_VALUE;
+    private static final Task.Difficulty[] DIFFICULTIES = Task.Difficulty.values();
+
+    private volatile Columns current = new Columns(8);
+    // Description -> position in the description table; writers only
+    private final Map<String, Integer> descriptionIds = new HashMap<>();
+
+    private static final class Columns {
+        final int size;
+        final long[] ids;
+        final int[] xp;
+        final int[] coins;
+        final byte[] difficulty;
+        final int[] day;           // epoch day of completion, NO_DAY if none
+        final long[] completed;    // one bit per row
+        final int[] description;   // index into descriptions
+        final String[] descriptions;
+        // Open addressing id -> row; 0 marks an empty key (ids are never 0)
+        final long[] indexKeys;
+        final int[] indexRows;
+
+        Columns(int capacity) {
+            this(0, new long[capacity], new int[capacity], new int[capacity], new byte[capacity],
+                    new int[capacity], new long[(capacity + 63) >> 6], new int[capacity], new String[8],
+                    new long[indexCapacity(capacity)], new int[indexCapacity(capacity)]);
+        }
+
+        Columns(int size, long[] ids, int[] xp, int[] coins, byte[] difficulty, int[] day, long[] completed,
+                int[] description, String[] descriptions, long[] indexKeys, int[] indexRows) {
+            this.size = size;
+            this.ids = ids;
+            this.xp = xp;
+            this.coins = coins;
+            this.difficulty = difficulty;
+            this.day = day;
+            this.completed = completed;
+            this.description = description;
+            this.descriptions = descriptions;
+            this.indexKeys = indexKeys;
+            this.indexRows = indexRows;
+        }
+
+        // The same arrays, seen up to a new size
+        Columns withSize(int newSize, String[] newDescriptions) {
+            return new Columns(newSize, ids, xp, coins, difficulty, day, completed, description,
+                    newDescriptions, indexKeys, indexRows);
+        }
+
+        int capacity() {
+            return ids.length;
+        }
+
+        boolean isCompleted(int row) {
+            return (completed[row >> 6] & (1L << row)) != 0;
+        }
+
+        void setCompleted(int row, boolean value) {
+            if (value) {
+                completed[row >> 6] |= 1L << row;
+            } else {
+                completed[row >> 6] &= ~(1L << row);
+            }
+        }
+
+        // Row of the task with this id, or -1
+        int rowOf(long id) {
+            int mask = indexKeys.length - 1;
+            for (int i = hash(id) & mask; ; i = (i + 1) & mask) {
+                long key = indexKeys[i];
+                if (key == 0) return -1;
+                if (key == id) {
+                    int row = indexRows[i];
+                    // A slot filled after this snapshot was taken belongs to a later one
+                    return row < size && ids[row] == id ? row : -1;
+                }
+            }
+        }
+
+        void index(long id, int row) {
+            int mask = indexKeys.length - 1;
+            int i = hash(id) & mask;
+            while (indexKeys[i] != 0 && indexKeys[i] != id) {
+                i = (i + 1) & mask;
+            }
+            indexRows[i] = row; // before the key, so a reader finding the key finds the row
+            indexKeys[i] = id;
+        }
+    }
+
+    private static int indexCapacity(int rows) {
+        return Integer.highestOneBit(Math.max(16, rows * 2 - 1)) << 1;
+    }
+
+    private static int hash(long id) {
+        long h = id * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    @Override
+    public Task get(int index) {
+        Columns c = current;
+        if (index < 0 || index >= c.size) throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + c.size);
+        return new Row(this, c, index);
+    }
+
+    @Override
+    public int size() {
+        return current.size;
+    }
+
+    // A view of the task with this id, or null
+    public Task byId(long id) {
+        Columns c = current;
+        int row = c.rowOf(id);
+        return row < 0 ? null : new Row(this, c, row);
+    }
+
+    public boolean containsId(long id) {
+        return current.rowOf(id) >= 0;
+    }
+
+    // Counts and sums straight from the columns
+    public TaskTotals totals() {
+        Columns c = current;
+        int n = DIFFICULTIES.length;
+        int[] tasks = new int[n];
+        int[] completed = new int[n];
+        long[] xp = new long[n];
+        long[] coins = new long[n];
+        for (int row = 0; row < c.size; row++) {
+            int d = c.difficulty[row];
+            tasks[d]++;
+            if (c.isCompleted(row)) {
+                completed[d]++;
+                xp[d] += c.xp[row];
+                coins[d] += c.coins[row];
+            }
+        }
+        return new TaskTotals(tasks, completed, xp, coins);
+    }
+
+    @Override
+    public synchronized boolean add(Task task) {
+        Columns c = current;
+        if (c.size == c.capacity()) {
+            c = grow(c, c.size + 1);
+        }
+        current = write(c, c.size, task).withSize(c.size + 1, descriptionTable(c));
+        return true;
+    }
+
+    @Override
+    public synchronized void add(int index, Task task) {
+        if (index == current.size) {
+            add(task);
+            return;
+        }
+        List<Task> rows = rows(current);
+        rows.add(index, task);
+        rebuild(rows);
+    }
+
+    @Override
+    public synchronized boolean addAll(Collection<? extends Task> tasks) {
+        for (Task task : tasks) {
+            add(task);
+        }
+        return !tasks.isEmpty();
+    }
+
+    @Override
+    public synchronized boolean addAll(int index, Collection<? extends Task> tasks) {
+        if (index == current.size) return addAll(tasks);
+        List<Task> rows = rows(current);
+        rows.addAll(index, tasks);
+        rebuild(rows);
+        return !tasks.isEmpty();
+    }
+
+    @Override
+    public synchronized Task set(int index, Task task) {
+        Task old = materialize(get(index));
+        List<Task> rows = rows(current);
+        rows.set(index, task);
+        rebuild(rows);
+        return old;
+    }
+
+    @Override
+    public synchronized Task remove(int index) {
+        Task old = materialize(get(index));
+        List<Task> rows = rows(current);
+        rows.remove(index);
+        rebuild(rows);
+        return old;
+    }
+
+    @Override
+    public synchronized boolean removeIf(Predicate<? super Task> filter) {
+        Columns c = current;
+        List<Task> kept = new ArrayList<>(c.size);
+        for (int row = 0; row < c.size; row++) {
+            Task view = new Row(this, c, row);
+            if (!filter.test(view)) kept.add(view);
+        }
+        if (kept.size() == c.size) return false;
+        rebuild(kept);
+        return true;
+    }
+
+    @Override
+    public synchronized void clear() {
+        descriptionIds.clear();
+        current = new Columns(8);
+    }
+
+    @Override
+    public synchronized void sort(Comparator<? super Task> comparator) {
+        List<Task> rows = rows(current);
+        rows.sort(comparator);
+        rebuild(rows);
+    }
+
+    @Override
+    public synchronized void replaceAll(UnaryOperator<Task> operator) {
+        List<Task> rows = rows(current);
+        rows.replaceAll(operator);
+        rebuild(rows);
+    }
+
+    // Replaces every row in one step; readers see the old rows or the new ones
+    synchronized void setAll(Collection<? extends Task> tasks) {
+        List<Task> rows = new ArrayList<>(tasks.size());
+        for (Task task : tasks) {
+            rows.add(materialize(task));
+        }
+        rebuild(rows);
+    }
+
+    // Iterates the rows as they are now, whatever changes meanwhile
+    @Override
+    public Iterator<Task> iterator() {
+        Columns c = current;
+        return new Iterator<Task>() {
+            private int row;
+
+            @Override
+            public boolean hasNext() {
+                return row < c.size;
+            }
+
+            @Override
+            public Task next() {
+                if (row >= c.size) throw new NoSuchElementException();
+                return new Row(TaskColumns.this, c, row++);
+            }
+        };
+    }
+
+    @Override
+    public Object[] toArray() {
+        Columns c = current;
+        Object[] views = new Object[c.size];
+        for (int row = 0; row < c.size; row++) {
+            views[row] = new Row(this, c, row);
+        }
+        return views;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T[] toArray(T[] a) {
+        Object[] views = toArray();
+        T[] result = a.length >= views.length ? a : Arrays.copyOf(a, views.length);
+        System.arraycopy(views, 0, result, 0, views.length);
+        if (result.length > views.length) result[views.length] = null;
+        return result;
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        if (!(o instanceof Task)) return -1;
+        return current.rowOf(((Task) o).getId());
+    }
+
+    @Override
+    public int lastIndexOf(Object o) {
+        return indexOf(o);
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return indexOf(o) >= 0;
+    }
+
+    // Completion is the one change made in place
+    synchronized void setCompletion(Row view, boolean completed, LocalDate date) {
+        Columns c = view.locate();
+        int row = view.row;
+        c.setCompleted(row, completed);
+        c.day[row] = date != null ? (int) date.toEpochDay() : NO_DAY;
+    }
+
+    // Fresh arrays holding exactly these tasks (which may be views of the current columns)
+    private void rebuild(List<Task> rows) {
+        descriptionIds.clear();
+        Columns c = new Columns(Math.max(8, rows.size()));
+        for (int row = 0; row < rows.size(); row++) {
+            c = write(c, row, rows.get(row)).withSize(row + 1, descriptionTable(c));
+        }
+        current = c;
+    }
+
+    private static List<Task> rows(Columns c) {
+        List<Task> rows = new ArrayList<>(c.size + 1);
+        for (int row = 0; row < c.size; row++) {
+            rows.add(materialize(new Row(null, c, row)));
+        }
+        return rows;
+    }
+
+    // A plain Task with the row's values, independent of the columns
+    private static Task materialize(Task view) {
+        return new Task(view);
+    }
+
+    // Writes a task into the row (spare capacity beyond c.size) and indexes it
+    private Columns write(Columns c, int row, Task task) {
+        if (task.getId() <= 0) throw new IllegalArgumentException("Task without an id");
+        c.ids[row] = task.getId();
+        c.xp[row] = task.getXpReward();
+        c.coins[row] = task.getCoinReward();
+        c.difficulty[row] = (byte) task.getDifficulty().ordinal();
+        LocalDate date = task.getCompletionDate();
+        c.day[row] = date != null ? (int) date.toEpochDay() : NO_DAY;
+        c.setCompleted(row, task.isCompleted());
+        c.description[row] = descriptionId(c, task.getDescription());
+        if ((row + 1) * 2 > c.indexKeys.length) {
+            c = reindex(c, row + 1);
+        } else {
+            c.index(task.getId(), row);
+        }
+        return c;
+    }
+
+    private String[] pendingDescriptions;
+
+    private int descriptionId(Columns c, String description) {
+        Integer id = descriptionIds.get(description);
+        if (id != null) return id;
+        String[] table = pendingDescriptions != null ? pendingDescriptions : c.descriptions;
+        int next = descriptionIds.size();
+        if (next == table.length) {
+            table = Arrays.copyOf(table, table.length * 2);
+        }
+        table[next] = description;
+        pendingDescriptions = table;
+        descriptionIds.put(description, next);
+        return next;
+    }
+
+    // The description table to publish with the next snapshot
+    private String[] descriptionTable(Columns c) {
+        String[] table = pendingDescriptions != null ? pendingDescriptions : c.descriptions;
+        pendingDescriptions = null;
+        return table;
+    }
+
+    // Same rows in arrays with room for at least minCapacity (older snapshots keep the old arrays)
+    private static Columns grow(Columns c, int minCapacity) {
+        int capacity = Math.max(minCapacity, c.capacity() + (c.capacity() >> 1));
+        Columns grown = new Columns(c.size, Arrays.copyOf(c.ids, capacity), Arrays.copyOf(c.xp, capacity),
+                Arrays.copyOf(c.coins, capacity), Arrays.copyOf(c.difficulty, capacity),
+                Arrays.copyOf(c.day, capacity), Arrays.copyOf(c.completed, (capacity + 63) >> 6),
+                Arrays.copyOf(c.description, capacity), c.descriptions, c.indexKeys, c.indexRows);
+        return reindex(grown, capacity);
+    }
+
+    // A new id index sized for the given number of rows, covering rows 0..row count written
+    private static Columns reindex(Columns c, int rows) {
+        int capacity = indexCapacity(Math.max(rows, c.capacity()));
+        Columns indexed = new Columns(c.size, c.ids, c.xp, c.coins, c.difficulty, c.day, c.completed,
+                c.description, c.descriptions, new long[capacity], new int[capacity]);
+        for (int row = 0; row < rows && row < c.capacity(); row++) {
+            if (c.ids[row] != 0) indexed.index(c.ids[row], row);
+        }
+        return indexed;
+    }
+
+    // A view of one row. It reads the current columns while its task is in the list, and
+    // the columns it was created from after that (so a removed task still reads as before).
+    private static final class Row extends Task {
+        private final TaskColumns store; // null for views used while rebuilding
+        private Columns columns;
+        private int row;
+        private long id;
+
+        Row(TaskColumns store, Columns columns, int row) {
+            this.store = store;
+            this.columns = columns;
+            this.row = row;
+            this.id = columns.ids[row];
+        }
+
+        Columns locate() {
+            if (store == null) return columns;
+            Columns c = store.current;
+            if (c != columns) {
+                if (row < c.size && c.ids[row] == id) {
+                    columns = c;
+                } else {
+                    int found = c.rowOf(id);
+                    if (found >= 0) {
+                        columns = c;
+                        row = found;
+                    }
+                }
+            }
+            return columns;
+        }
+
+        @Override
+        public long getId() {
+            return id;
+        }
+
+        // Only called by User on a view being copied into a list; the view follows the new id
+        @Override
+        public void setId(long id) {
+            this.id = id;
+        }
+
+        @Override
+        public String getDescription() {
+            Columns c = locate();
+            return c.descriptions[c.description[row]];
+        }
+
+        @Override
+        public int getXpReward() {
+            return locate().xp[row];
+        }
+
+        @Override
+        public int getCoinReward() {
+            return locate().coins[row];
+        }
+
+        @Override
+        public Difficulty getDifficulty() {
+            return DIFFICULTIES[locate().difficulty[row]];
+        }
+
+        @Override
+        public boolean isCompleted() {
+            return locate().isCompleted(row);
+        }
+
+        @Override
+        public LocalDate getCompletionDate() {
+            int day = locate().day[row];
+            return day == NO_DAY ? null : LocalDate.ofEpochDay(day);
+        }
+
+        @Override
+        public void setCompleted(boolean completed) {
+            LocalDate date = getCompletionDate();
+            if (completed && date == null) date = LocalDate.now();
+            setCompletion(completed, date);
+        }
+
+        @Override
+        public void setCompletionDate(LocalDate completionDate) {
+            setCompletion(isCompleted(), completionDate);
+        }
+
+        private void setCompletion(boolean completed, LocalDate date) {
+            if (store != null) {
+                store.setCompletion(this, completed, date);
+            } else {
+                columns.setCompleted(row, completed);
+                columns.day[row] = date != null ? (int) date.toEpochDay() : NO_DAY;
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Row && ((Row) o).store == store && store != null && ((Row) o).id == id;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(id);
+        }
+    }
+}
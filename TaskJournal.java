@@ -0,0 +1,221 @@
+//util->TaskJournal
+package util;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import models.CompletionCalendar;
+import models.Task;
+import models.TaskTotals;
+import models.User;
+import models.UserHeader;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+// Append-only log of small user changes, stored next to the user's snapshot file.
+// One JSON record per line; DataManager folds it back into a snapshot when it grows too large.
+public class TaskJournal {
+    private static final Gson gson = new Gson();
+
+    public enum Type {
+        TASK_ADDED, TASK_COMPLETED, TASK_DELETED, COINS_SPENT
+    }
+
+    public static class Record {
+        Type type;
+        long seq;            // per-user sequence number, compared against User.getJournalSequence()
+        long taskId;         // the task's id (0 in records written before tasks had ids)
+        int index = -1;      // position in the task list, in completed/deleted records without a taskId
+        String description;
+        int xpReward;
+        int coinReward;
+        Task.Difficulty difficulty;
+        Long completionDay;  // epoch day, only for completed records
+        Boolean wasCompleted; // deleted records: whether the task had been completed
+        int amount;          // coins spent
+        Long version;        // user version after this record, set on the last record of each save
+
+        private Record() {
+            // For Gson
+        }
+
+        private Record(Type type) {
+            this.type = type;
+        }
+
+        public Type getType() {
+            return type;
+        }
+
+        public long getSeq() {
+            return seq;
+        }
+    }
+
+    public static Record taskAdded(Task task) {
+        Record r = new Record(Type.TASK_ADDED);
+        r.taskId = task.getId();
+        r.description = task.getDescription();
+        r.xpReward = task.getXpReward();
+        r.coinReward = task.getCoinReward();
+        r.difficulty = task.getDifficulty();
+        return r;
+    }
+
+    public static Record taskCompleted(Task task) {
+        Record r = new Record(Type.TASK_COMPLETED);
+        r.taskId = task.getId();
+        r.xpReward = task.getXpReward();
+        r.coinReward = task.getCoinReward();
+        r.difficulty = task.getDifficulty();
+        LocalDate date = task.getCompletionDate();
+        r.completionDay = date != null ? date.toEpochDay() : null;
+        return r;
+    }
+
+    // The task is described too, so the header totals can be replayed without the task list
+    public static Record taskDeleted(Task task) {
+        Record r = new Record(Type.TASK_DELETED);
+        r.taskId = task.getId();
+        r.description = task.getDescription();
+        r.xpReward = task.getXpReward();
+        r.coinReward = task.getCoinReward();
+        r.difficulty = task.getDifficulty();
+        r.wasCompleted = task.isCompleted();
+        return r;
+    }
+
+    public static Record coinsSpent(int amount) {
+        Record r = new Record(Type.COINS_SPENT);
+        r.amount = amount;
+        return r;
+    }
+
+    public static void append(File file, List<Record> records) throws IOException {
+        file.getParentFile().mkdirs();
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            for (Record record : records) {
+                writer.write(gson.toJson(record));
+                writer.write('\n');
+            }
+            writer.flush();
+            out.getChannel().force(false);
+        }
+    }
+
+    public static List<Record> read(File file) throws IOException {
+        List<Record> records = new ArrayList<>();
+        if (!file.exists()) return records;
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) continue;
+                try {
+                    Record record = gson.fromJson(line, Record.class);
+                    if (record == null || record.type == null) break;
+                    records.add(record);
+                } catch (JsonParseException e) {
+                    // A torn last line from a crash mid-append; everything before it is still good
+                    System.out.println("Ignoring truncated journal record in " + file.getName());
+                    break;
+                }
+            }
+        }
+        return records;
+    }
+
+    // The header fields after replaying the records newer than the header, without the tasks:
+    // XP, coins and counters are carried by the records themselves
+    public static UserHeader applyToHeader(UserHeader header, List<Record> records) {
+        User scratch = new User(header.getUsername());
+        scratch.setXp(header.getXp());
+        scratch.setLevel(header.getLevel());
+        scratch.setCoins(header.getCoins());
+        scratch.setTotalCompletedTasks(header.getTotalCompletedTasks());
+        scratch.setJournalSequence(header.getJournalSequence());
+        scratch.setVersion(header.getVersion());
+        long oldestCompletionDay = header.getOldestCompletionDay();
+        TaskTotals totals = header.getTaskTotals();
+        CompletionCalendar calendar = header.getCompletionCalendar();
+        for (Record record : records) {
+            if (record.seq <= header.getJournalSequence()) continue;
+            apply(scratch, record);
+            if (record.type == Type.TASK_COMPLETED && record.completionDay != null) {
+                oldestCompletionDay = Math.min(oldestCompletionDay, record.completionDay);
+            }
+            if (totals != null) totals = applyToTotals(totals, record);
+            if (calendar != null && record.type == Type.TASK_COMPLETED) {
+                // Unknown (rebuilt from the tasks) if an old record did not say which day
+                calendar = record.completionDay == null ? null
+                        : calendar.plus(record.completionDay, 1, record.xpReward, record.coinReward);
+            }
+        }
+        return new UserHeader(scratch.getUsername(), scratch.getXp(), scratch.getLevel(), scratch.getCoins(),
+                scratch.getTotalCompletedTasks(), scratch.getJournalSequence(), scratch.getVersion(), oldestCompletionDay,
+                totals, calendar, header.getArchivedSegments());
+    }
+
+    // Null if the record does not say enough (written before records described their task)
+    private static TaskTotals applyToTotals(TaskTotals totals, Record record) {
+        switch (record.type) {
+            case TASK_ADDED:
+                return totals.plus(new Task(record.description, record.xpReward, record.coinReward, record.difficulty));
+            case TASK_COMPLETED:
+                if (record.difficulty == null) return null;
+                return totals.completing(record.difficulty, record.xpReward, record.coinReward);
+            case TASK_DELETED:
+                if (record.difficulty == null || record.wasCompleted == null) return null;
+                return totals.minus(record.difficulty, record.wasCompleted, record.xpReward, record.coinReward);
+            default:
+                return totals;
+        }
+    }
+
+    // Re-applies a record to a user, mirroring what the screens did when it was written
+    public static void apply(User user, Record record) {
+        List<Task> tasks = user.getTasks();
+        switch (record.type) {
+            case TASK_ADDED:
+                Task added = new Task(record.description, record.xpReward, record.coinReward, record.difficulty);
+                added.setId(record.taskId);
+                tasks.add(added);
+                break;
+            case TASK_COMPLETED:
+                Task task = find(user, record);
+                if (task != null) {
+                    if (record.completionDay != null) {
+                        task.setCompletionDate(LocalDate.ofEpochDay(record.completionDay));
+                    }
+                    user.markCompleted(task);
+                }
+                user.addXP(record.xpReward);
+                user.addCoins(record.coinReward);
+                user.incrementCompletedTasksCounter();
+                break;
+            case TASK_DELETED:
+                Task deleted = find(user, record);
+                if (deleted != null) {
+                    tasks.remove(deleted);
+                }
+                break;
+            case COINS_SPENT:
+                user.spendCoins(record.amount);
+                break;
+        }
+        user.setJournalSequence(record.seq);
+        if (record.version != null) user.setVersion(record.version);
+    }
+
+    // The task a completed/deleted record refers to, by id, or by position in older records
+    private static Task find(User user, Record record) {
+        if (record.taskId != 0) return user.getTask(record.taskId);
+        List<Task> tasks = user.getTasks();
+        return record.index >= 0 && record.index < tasks.size() ? tasks.get(record.index) : null;
+    }
+}
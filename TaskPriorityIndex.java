@@ -0,0 +1,55 @@
+package models;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+// Ids of a user's open tasks ordered by priority: XP + coins, highest first, and the older
+// task (lower id) first among equals, as TaskSelector orders them too. User keeps it up to
+// date as tasks are added, completed and removed, once something has asked for it, so the
+// best few tasks are found in O(log n) per change instead of sorting the whole list each
+// time. Readers never block.
+public final class TaskPriorityIndex {
+    private final ConcurrentSkipListSet<Entry> entries = new ConcurrentSkipListSet<>();
+
+    public static int priority(Task task) {
+        return task.getXpReward() + task.getCoinReward();
+    }
+
+    private static final class Entry implements Comparable<Entry> {
+        final int priority;
+        final long id;
+
+        Entry(Task task) {
+            this.priority = priority(task);
+            this.id = task.getId();
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            if (priority != other.priority) return Integer.compare(other.priority, priority);
+            return Long.compare(id, other.id);
+        }
+    }
+
+    // Only open tasks are indexed; completed ones are ignored
+    void add(Task task) {
+        if (!task.isCompleted()) entries.add(new Entry(task));
+    }
+
+    void remove(Task task) {
+        entries.remove(new Entry(task));
+    }
+
+    // Ids of the first k open tasks, best first (fewer if there are not that many)
+    public long[] top(int k) {
+        long[] ids = new long[Math.max(0, Math.min(k, 16))];
+        int n = 0;
+        Iterator<Entry> it = entries.iterator();
+        while (n < k && it.hasNext()) {
+            if (n == ids.length) ids = Arrays.copyOf(ids, (int) Math.min(k, ids.length * 2L));
+            ids[n++] = it.next().id;
+        }
+        return n == ids.length ? ids : Arrays.copyOf(ids, n);
+    }
+}
@@ -2,6 +2,8 @@
 package util;
 
 import models.Task;
+import models.TaskPriorityIndex;
+import models.User;
 import java.util.*;
 
 public class TaskSelector {
@@ -20,62 +22,53 @@ public class TaskSelector {
         return 10 + (level - 1) * 5;
     }
 
-    // Original method for selecting optimal tasks based on effort
+    // The tasks with the most XP + coins whose efforts fit the level's budget; among equally
+    // valuable sets, the one with the most HARD tasks. 0/1 knapsack over one row of best
+    // values per effort, plus one bit per (task, effort) recording whether the task was taken,
+    // so memory is O(W) values and n * W bits rather than a table of sets.
     public static List<Task> selectOptimalTasks(List<Task> tasks, int level) {
-        int maxEffort = getMaxEffortForLevel(level);
+        int maxEffort = Math.max(0, getMaxEffortForLevel(level));
         int n = tasks.size();
+        int width = maxEffort + 1;
+
+        // best[j] / hard[j]: value and HARD count of the best set with effort at most j
+        int[] best = new int[width];
+        int[] hard = new int[width];
+        long[] taken = new long[(int) (((long) n * width + 63) >>> 6)];
 
-        int[] effort = new int[n];
-        int[] value = new int[n];
         for (int i = 0; i < n; i++) {
             Task task = tasks.get(i);
-            effort[i] = getEffort(task.getDifficulty());
-            value[i] = task.getXpReward() + task.getCoinReward();
-        }
-
-        boolean[][] dp = new boolean[n + 1][maxEffort + 1];
-        dp[0][0] = true;
-        for (int i = 1; i <= n; i++) {
-            for (int j = 0; j <= maxEffort; j++) {
-                if (j >= effort[i - 1]) {
-                    dp[i][j] = dp[i - 1][j] || dp[i - 1][j - effort[i - 1]];
-                } else {
-                    dp[i][j] = dp[i - 1][j];
+            int effort = getEffort(task.getDifficulty());
+            if (effort > maxEffort) continue;
+            int value = task.getXpReward() + task.getCoinReward();
+            int isHard = task.getDifficulty() == Task.Difficulty.HARD ? 1 : 0;
+            long row = (long) i * width;
+            // Downwards, so best[j - effort] still excludes task i
+            for (int j = maxEffort; j >= effort; j--) {
+                int withValue = best[j - effort] + value;
+                int withHard = hard[j - effort] + isHard;
+                if (withValue > best[j] || (withValue == best[j] && withHard > hard[j])) {
+                    best[j] = withValue;
+                    hard[j] = withHard;
+                    long bit = row + j;
+                    taken[(int) (bit >>> 6)] |= 1L << bit;
                 }
             }
         }
 
-        int bestValue = -1;
-        List<Task> bestSet = new ArrayList<>();
-
-        for (int j = maxEffort; j >= 0; j--) {
-            if (dp[n][j]) {
-                List<Task> chosen = new ArrayList<>();
-                int w = j;
-                for (int i = n; i >= 1; i--) {
-                    if (w >= effort[i - 1] && dp[i - 1][w - effort[i - 1]]) {
-                        chosen.add(tasks.get(i - 1));
-                        w -= effort[i - 1];
-                    }
-                }
-
-                int totalValue = chosen.stream()
-                        .mapToInt(t -> t.getXpReward() + t.getCoinReward())
-                        .sum();
-                long hardCount = chosen.stream()
-                        .filter(t -> t.getDifficulty() == Task.Difficulty.HARD)
-                        .count();
-
-                if (totalValue > bestValue ||
-                        (totalValue == bestValue &&
-                                hardCount > bestSet.stream().filter(t -> t.getDifficulty() == Task.Difficulty.HARD).count())) {
-                    bestValue = totalValue;
-                    bestSet = chosen;
-                }
+        // best[maxEffort] is the optimum; walk the decisions back from it
+        List<Task> chosen = new ArrayList<>();
+        int j = maxEffort;
+        for (int i = n - 1; i >= 0; i--) {
+            long bit = (long) i * width + j;
+            if ((taken[(int) (bit >>> 6)] & (1L << bit)) != 0) {
+                Task task = tasks.get(i);
+                chosen.add(task);
+                j -= getEffort(task.getDifficulty());
             }
         }
-
-        return bestSet;
+        Collections.reverse(chosen); // list order
+        return chosen;
     }
 
     /**
@@ -85,46 +78,87 @@ public class TaskSelector {
      * @return List of tasks sorted by priority (highest priority first)
      */
     public static List<Task> prioritizeTasks(List<Task> tasks) {
+        return prioritizeTasks(tasks, tasks.size());
+    }
+
+    // Same, for a user's own list: the task totals say up front whether anything is open
+    public static List<Task> prioritizeTasks(User user) {
+        int open = user.getTaskTotals().getOpen();
+        if (open <= 0) {
+            return new ArrayList<>();
+        }
+        return prioritizeTasks(user.getTasks(), open);
+    }
+
+    private static List<Task> prioritizeTasks(List<Task> tasks, int expectedOpen) {
         // Filter out completed tasks
-        List<Task> incompleteTasks = new ArrayList<>();
+        List<Task> incompleteTasks = new ArrayList<>(expectedOpen);
         for (Task task : tasks) {
             if (!task.isCompleted()) {
                 incompleteTasks.add(task);
             }
         }
 
-        // If no incomplete tasks, return empty list
-        if (incompleteTasks.isEmpty()) {
-            return incompleteTasks;
-        }
-
-        // Create a copy of tasks with their priorities
-        List<TaskPriority> taskPriorities = new ArrayList<>();
-        for (Task task : incompleteTasks) {
-            int priority = task.getXpReward() + task.getCoinReward();
-            taskPriorities.add(new TaskPriority(task, priority));
-        }
+        // Highest priority first, then the older task (lower id) as TaskPriorityIndex orders them;
+        // the sort is stable, so tasks without distinct ids keep their list order
+        incompleteTasks.sort(BY_PRIORITY);
+        return incompleteTasks;
+    }
 
-        // Sort tasks by priority (highest first)
-        Collections.sort(taskPriorities, (a, b) -> Integer.compare(b.priority, a.priority));
+    private static final Comparator<Task> BY_PRIORITY =
+            Comparator.comparingInt(TaskPriorityIndex::priority).reversed().thenComparingLong(Task::getId);
 
-        // Extract tasks in priority order
-        List<Task> prioritizedTasks = new ArrayList<>();
-        for (TaskPriority tp : taskPriorities) {
-            prioritizedTasks.add(tp.task);
+    // The k open tasks with the highest priority, best first (equal ones by id, then list
+    // order), as prioritizeTasks would start; a bounded heap, so O(n log k) and only k tasks held
+    public static List<Task> topTasks(List<Task> tasks, int k) {
+        if (k <= 0) return new ArrayList<>();
+        // Worst of the kept ones on top: lowest priority, then highest id, then latest in the list
+        PriorityQueue<Ranked> heap = new PriorityQueue<>(Math.min(k, 64) + 1, (a, b) -> b.compareTo(a));
+        int position = 0;
+        for (Task task : tasks) {
+            if (!task.isCompleted()) {
+                Ranked ranked = new Ranked(task, TaskPriorityIndex.priority(task), position);
+                if (heap.size() < k) {
+                    heap.add(ranked);
+                } else if (ranked.compareTo(heap.peek()) < 0) {
+                    heap.poll();
+                    heap.add(ranked);
+                }
+            }
+            position++;
         }
-
-        return prioritizedTasks;
+        Task[] top = new Task[heap.size()];
+        for (int i = top.length - 1; i >= 0; i--) {
+            top[i] = heap.poll().task;
+        }
+        return new ArrayList<>(Arrays.asList(top));
     }
 
-    // Helper class to store task with its priority
-    private static class TaskPriority {
-        Task task;
-        int priority;
+    // A task in the topTasks heap, ordered best first
+    private static class Ranked implements Comparable<Ranked> {
+        final Task task;
+        final int priority;
+        final long id;
+        final int position;
 
-        TaskPriority(Task task, int priority) {
+        Ranked(Task task, int priority, int position) {
             this.task = task;
             this.priority = priority;
+            this.id = task.getId();
+            this.position = position;
+        }
+
+        @Override
+        public int compareTo(Ranked other) {
+            if (priority != other.priority) return Integer.compare(other.priority, priority);
+            if (id != other.id) return Long.compare(id, other.id);
+            return Integer.compare(position, other.position);
         }
     }
-}
\ No newline at end of file
+
+    // Same, for a user's own list: read from the priority index the user keeps up to date,
+    // so O(k + log n) instead of a pass over the list
+    public static List<Task> topTasks(User user, int k) {
+        return user.getTopOpenTasks(k);
+    }
+}
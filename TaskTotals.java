@@ -0,0 +1,108 @@
+package models;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+// Counts and reward sums over a user's task list, per difficulty. Immutable: User swaps in a
+// new one whenever a task is added, completed or removed, so the screens read them in O(1)
+// instead of scanning the tasks. Snapshots store them in the header.
+public final class TaskTotals {
+    private static final int DIFFICULTIES = Task.Difficulty.values().length;
+
+    public static final TaskTotals EMPTY = new TaskTotals(new int[DIFFICULTIES], new int[DIFFICULTIES],
+            new long[DIFFICULTIES], new long[DIFFICULTIES]);
+
+    private final int[] tasks;          // every task in the list
+    private final int[] completed;      // the completed ones
+    private final long[] completedXp;   // rewards of the completed ones
+    private final long[] completedCoins;
+
+    // Arrays are indexed by Task.Difficulty ordinal; missing entries count as 0
+    public TaskTotals(int[] tasks, int[] completed, long[] completedXp, long[] completedCoins) {
+        this.tasks = Arrays.copyOf(tasks, DIFFICULTIES);
+        this.completed = Arrays.copyOf(completed, DIFFICULTIES);
+        this.completedXp = Arrays.copyOf(completedXp, DIFFICULTIES);
+        this.completedCoins = Arrays.copyOf(completedCoins, DIFFICULTIES);
+    }
+
+    public static TaskTotals of(Collection<Task> tasks) {
+        return EMPTY.plus(tasks);
+    }
+
+    public int getTasks() {
+        return Arrays.stream(tasks).sum();
+    }
+
+    public int getTasks(Task.Difficulty difficulty) {
+        return tasks[difficulty.ordinal()];
+    }
+
+    public int getCompleted() {
+        return Arrays.stream(completed).sum();
+    }
+
+    public int getCompleted(Task.Difficulty difficulty) {
+        return completed[difficulty.ordinal()];
+    }
+
+    public int getOpen() {
+        return getTasks() - getCompleted();
+    }
+
+    public long getCompletedXp() {
+        return Arrays.stream(completedXp).sum();
+    }
+
+    public long getCompletedXp(Task.Difficulty difficulty) {
+        return completedXp[difficulty.ordinal()];
+    }
+
+    public long getCompletedCoins() {
+        return Arrays.stream(completedCoins).sum();
+    }
+
+    public long getCompletedCoins(Task.Difficulty difficulty) {
+        return completedCoins[difficulty.ordinal()];
+    }
+
+    public TaskTotals plus(Task task) {
+        return change(task.getDifficulty(), 1, task.isCompleted(), task.getXpReward(), task.getCoinReward());
+    }
+
+    public TaskTotals plus(Collection<Task> added) {
+        TaskTotals totals = new TaskTotals(tasks, completed, completedXp, completedCoins);
+        for (Task task : added) {
+            totals.add(task.getDifficulty(), 1, task.isCompleted(), task.getXpReward(), task.getCoinReward());
+        }
+        return totals;
+    }
+
+    public TaskTotals minus(Task task) {
+        return minus(task.getDifficulty(), task.isCompleted(), task.getXpReward(), task.getCoinReward());
+    }
+
+    public TaskTotals minus(Task.Difficulty difficulty, boolean wasCompleted, int xpReward, int coinReward) {
+        return change(difficulty, -1, wasCompleted, -xpReward, -coinReward);
+    }
+
+    // An open task of the list became completed
+    public TaskTotals completing(Task.Difficulty difficulty, int xpReward, int coinReward) {
+        return change(difficulty, 0, true, xpReward, coinReward);
+    }
+
+    private TaskTotals change(Task.Difficulty difficulty, int count, boolean completed, int xp, int coins) {
+        TaskTotals totals = new TaskTotals(tasks, this.completed, completedXp, completedCoins);
+        totals.add(difficulty, count, completed, xp, coins);
+        return totals;
+    }
+
+    // Only used on a copy that has not been handed out yet
+    private void add(Task.Difficulty difficulty, int count, boolean completed, long xp, long coins) {
+        int d = difficulty.ordinal();
+        tasks[d] += count;
+        if (!completed) return;
+        this.completed[d] += count != 0 ? count : 1;
+        completedXp[d] += xp;
+        completedCoins[d] += coins;
+    }
+}
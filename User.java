@@ -1,20 +1,168 @@
 package models;
 
+import java.time.LocalDate;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
 
 public class User {
+    // Level curve, built once: XP_TO_NEXT[level] = 100 * floor(1.5^(level - 1)) is the XP needed
+    // to go from level to level + 1, LEVEL_START[level] the total XP earned on reaching level.
+    // It ends at MAX_LEVEL, the first level whose requirement no longer fits the int xp field;
+    // XP keeps adding up there (saturating at Integer.MAX_VALUE) without further level-ups.
+    public static final int MAX_LEVEL;
+    private static final long[] XP_TO_NEXT;
+    private static final long[] LEVEL_START;
+    private static final int LEVEL_UP_BONUS = 50;
+
+    static {
+        List<Long> toNext = new ArrayList<>();
+        toNext.add(0L); // levels start at 1
+        int level = 1;
+        while (true) {
+            long needed = 100 * (long) Math.pow(1.5, level - 1);
+            toNext.add(needed);
+            if (needed > Integer.MAX_VALUE) break;
+            level++;
+        }
+        MAX_LEVEL = level;
+        XP_TO_NEXT = toNext.stream().mapToLong(Long::longValue).toArray();
+        LEVEL_START = new long[MAX_LEVEL + 1];
+        for (int l = 2; l <= MAX_LEVEL; l++) {
+            LEVEL_START[l] = LEVEL_START[l - 1] + XP_TO_NEXT[l - 1];
+        }
+    }
+
+    // The numeric state. Never changed in place: every update swaps in a new Stats, so a
+    // background save or upload reading getStats() sees values that belong together
+    // without locking out the UI thread.
+    public static final class Stats {
+        private final int xp;
+        private final int level;
+        private final int coins;
+        private final int totalCompletedTasks; // Track total completed tasks, even if deleted later
+
+        private Stats(int xp, int level, int coins, int totalCompletedTasks) {
+            this.xp = xp;
+            this.level = level;
+            this.coins = coins;
+            this.totalCompletedTasks = totalCompletedTasks;
+        }
+
+        public int getXp() {
+            return xp;
+        }
+
+        public int getLevel() {
+            return level;
+        }
+
+        public int getCoins() {
+            return coins;
+        }
+
+        public int getTotalCompletedTasks() {
+            return totalCompletedTasks;
+        }
+
+        // Total XP earned since level 1
+        public long getTotalXp() {
+            return LEVEL_START[Math.max(1, Math.min(level, MAX_LEVEL))] + xp;
+        }
+    }
+
     private String username;
-    private int xp;
-    private int level;
-    private int coins;
-    private ArrayList<Task> tasks = new ArrayList<>();
-    private int totalCompletedTasks = 0; // Track total completed tasks, even if deleted later
+    private final AtomicReference<Stats> stats;
+    // studyleveling.taskStore=columnar keeps tasks as primitive columns (TaskColumns) instead of
+    // Task objects, for users with huge task histories; getTasks() then hands out row views
+    private static final boolean COLUMNAR = "columnar".equals(System.getProperty("studyleveling.taskStore"));
+
+    // Null unless COLUMNAR; then it is the task list, and indexes the ids itself
+    private final TaskColumns columns = COLUMNAR ? new TaskColumns() : null;
+    // Snapshot-read (TaskArrayList), so saves and uploads can iterate while the UI adds and completes
+    // tasks, without copying the list per add. Only a merge replaces the list itself (see applyMerge),
+    // so readers see the old or the new one.
+    private volatile List<Task> tasks = columns != null ? columns : new TaskArrayList();
+    // What getTasks() hands out: the same list, keeping taskTotals up to date on every change
+    private final List<Task> taskView = new TaskList();
+    // Null only while the tasks are unread and the header did not carry the totals
+    private final AtomicReference<TaskTotals> taskTotals = new AtomicReference<>(TaskTotals.EMPTY);
+    // Completions per day, including tasks deleted or archived since; null like taskTotals
+    private final AtomicReference<CompletionCalendar> completionCalendar = new AtomicReference<>(CompletionCalendar.EMPTY);
+    // Open tasks by priority; built by the first getTopOpenTasks, then kept up to date (under taskView)
+    private volatile TaskPriorityIndex priorityIndex;
+    // Task id -> task, for every task in the list (unused with columns); ids are handed out from nextTaskId
+    private final Map<Long, Task> tasksById = new ConcurrentHashMap<>();
+    private long nextTaskId = 1; // guarded by taskView
+    private long journalSequence = 0; // Last journal record reflected in this state
+    private long version = 0; // Bumped on every save; a save based on an older version is merged
+    private volatile int archivedSegments = 0; // see TaskArchive.archiveOld
+
+    // Set for users loaded header-first: the task list is read on first use of getTasks()
+    private volatile Supplier<List<Task>> taskLoader;
+    private long oldestCompletionDay = UserHeader.NO_COMPLETED_TASKS; // from the header, until tasks are loaded
 
     public User(String username) {
         this.username = username;
-        this.xp = 0;
-        this.level = 1;
-        this.coins = 0;
+        this.stats = new AtomicReference<>(new Stats(0, 1, 0, 0));
+    }
+
+    // Copies the persisted state (not the multiplayer session tracking)
+    public User(User other) {
+        this.username = other.username;
+        this.stats = new AtomicReference<>(other.stats.get());
+        this.journalSequence = other.journalSequence;
+        this.version = other.version;
+        this.archivedSegments = other.archivedSegments;
+        this.completionCalendar.set(other.completionCalendar.get());
+        synchronized (other) {
+            if (other.taskLoader != null) {
+                // Still unread; the copy reads its own list from the same source
+                this.taskLoader = other.taskLoader;
+                this.oldestCompletionDay = other.oldestCompletionDay;
+                this.taskTotals.set(other.taskTotals.get());
+                return;
+            }
+        }
+        List<Task> copies = new ArrayList<>();
+        for (Task task : other.tasks) {
+            copies.add(new Task(task));
+        }
+        ((TaskList) this.taskView).load(copies);
+    }
+
+    // A user whose tasks are only read (by taskLoader) when first needed
+    public User(UserHeader header, Supplier<List<Task>> taskLoader) {
+        this.username = header.getUsername();
+        this.stats = new AtomicReference<>(new Stats(header.getXp(), header.getLevel(), header.getCoins(),
+                header.getTotalCompletedTasks()));
+        this.journalSequence = header.getJournalSequence();
+        this.version = header.getVersion();
+        this.archivedSegments = header.getArchivedSegments();
+        this.oldestCompletionDay = header.getOldestCompletionDay();
+        this.taskTotals.set(header.getTaskTotals());
+        this.completionCalendar.set(header.getCompletionCalendar());
+        this.taskLoader = taskLoader;
+    }
+
+    public UserHeader getHeader() {
+        Stats s = stats.get();
+        return new UserHeader(username, s.xp, s.level, s.coins, s.totalCompletedTasks, journalSequence, version,
+                getOldestCompletionDay(), taskTotals.get(), completionCalendar.get(), archivedSegments);
     }
 
     // Getter methods
@@ -22,66 +170,321 @@ public class User {
         return username;
     }
 
+    // XP, level, coins and completed count as of one moment; use this rather than several
+    // getters when the values have to agree (saving, uploading, displaying a summary)
+    public Stats getStats() {
+        return stats.get();
+    }
+
     public int getXp() {
-        return xp;
+        return stats.get().xp;
     }
 
     public int getLevel() {
-        return level;
+        return stats.get().level;
     }
 
     public int getCoins() {
-        return coins;
+        return stats.get().coins;
+    }
+
+    // The live list; safe to iterate from any thread while others change it
+    public List<Task> getTasks() {
+        if (taskLoader != null) loadTasks();
+        return taskView;
+    }
+
+    // The tasks as of now, unaffected by later changes (for encoders that index into the list)
+    public List<Task> getTaskSnapshot() {
+        return List.of(getTasks().toArray(new Task[0]));
+    }
+
+    public boolean isTaskListLoaded() {
+        return taskLoader == null;
+    }
+
+    // Epoch day of the oldest completed task, without loading the task list
+    public long getOldestCompletionDay() {
+        synchronized (this) {
+            if (taskLoader != null) return oldestCompletionDay;
+        }
+        return UserHeader.oldestCompletionDay(tasks);
     }
 
-    public ArrayList<Task> getTasks() {
-        return tasks;
+    private synchronized void loadTasks() {
+        if (taskLoader == null) return;
+        ((TaskList) taskView).load(taskLoader.get());
+        taskLoader = null;
+    }
+
+    // The task with this id, or null if it is not (or no longer) in the list; O(1)
+    public Task getTask(long id) {
+        getTasks();
+        return lookup(id);
+    }
+
+    private Task lookup(long id) {
+        return columns != null ? columns.byId(id) : tasksById.get(id);
+    }
+
+    // Counts and reward sums of the task list, kept up to date as it changes; answered from
+    // the header while the tasks are unread, if the header has them
+    public TaskTotals getTaskTotals() {
+        TaskTotals totals = taskTotals.get();
+        if (totals == null) {
+            loadTasks();
+            totals = taskTotals.get();
+        }
+        return totals;
+    }
+
+    // Tasks, XP and coins completed per day, for streaks and day-range sums; answered from the
+    // header while the tasks are unread, if the header has it
+    public CompletionCalendar getCompletionCalendar() {
+        CompletionCalendar calendar = completionCalendar.get();
+        if (calendar == null) {
+            loadTasks();
+            calendar = completionCalendar.get();
+        }
+        return calendar;
+    }
+
+    // For decoders and merges; completing tasks keeps it up to date otherwise
+    public void setCompletionCalendar(CompletionCalendar calendar) {
+        completionCalendar.set(calendar);
+    }
+
+    // The state to merge later saves against (see DataManager): stats, calendar and task ids,
+    // not a copy of the tasks. Tasks still unread are read from the same source if a merge needs them.
+    public UserBaseline getBaseline() {
+        Supplier<List<Task>> loader;
+        synchronized (this) {
+            loader = taskLoader;
+        }
+        if (loader != null) {
+            return new UserBaseline(stats.get(), completionCalendar.get(), version, loader);
+        }
+        return new UserBaseline(stats.get(), completionCalendar.get(), version, tasks);
+    }
+
+    // Rebases this user onto a merge result (see UserMerger). Runs under the task list's lock, so
+    // no edit or completion interleaves; the stats and the calendar are recomputed from their
+    // current value, should the UI change them meanwhile, and the list is swapped in one step.
+    public void applyMerge(UnaryOperator<Stats> mergeStats, UnaryOperator<CompletionCalendar> mergeCalendar,
+                           UnaryOperator<List<Task>> mergeTasks) {
+        getTasks();
+        synchronized (taskView) {
+            ((TaskList) taskView).replaceWith(mergeTasks.apply(List.copyOf(tasks)));
+            completionCalendar.updateAndGet(mergeCalendar);
+            update(mergeStats);
+        }
+    }
+
+    // The k open tasks with the highest priority (see TaskPriorityIndex), best first, in
+    // O(k + log n) rather than by sorting the list
+    public List<Task> getTopOpenTasks(int k) {
+        getTasks();
+        TaskPriorityIndex index = priorityIndex;
+        if (index == null) {
+            synchronized (taskView) {
+                index = priorityIndex;
+                if (index == null) {
+                    index = new TaskPriorityIndex();
+                    for (Task task : tasks) {
+                        index.add(task);
+                    }
+                    priorityIndex = index;
+                }
+            }
+        }
+        List<Task> top = new ArrayList<>();
+        for (long id : index.top(k)) {
+            Task task = lookup(id);
+            if (task != null) top.add(task); // removed meanwhile
+        }
+        return top;
+    }
+
+    // Marks a task of this user's list completed and counts it; false if it already was.
+    // Use this (or completeTask) rather than Task.setCompleted on a task already in the list.
+    public boolean markCompleted(Task task) {
+        getTasks();
+        synchronized (taskView) {
+            // With columns the list holds the task's row, not the Task the caller added
+            Task live = columns != null && columns.containsId(task.getId()) ? columns.byId(task.getId()) : task;
+            if (live.isCompleted()) return false;
+            live.setCompleted(true);
+            if (live != task) {
+                task.setCompleted(true);
+                task.setCompletionDate(live.getCompletionDate());
+            }
+            taskTotals.updateAndGet(t -> t.completing(task.getDifficulty(), task.getXpReward(), task.getCoinReward()));
+            ((TaskList) taskView).unindex(task);
+            LocalDate day = live.getCompletionDate();
+            completionCalendar.updateAndGet(c -> c.completing(day, task.getXpReward(), task.getCoinReward()));
+            return true;
+        }
+    }
+
+    // Completes a task of this user's list and grants its rewards; false if it already was
+    public boolean completeTask(Task task) {
+        if (!markCompleted(task)) return false;
+        grant(new Grant(task.getXpReward(), task.getCoinReward(), 1));
+        return true;
     }
 
     public int getTotalCompletedTasks() {
-        return totalCompletedTasks;
+        return stats.get().totalCompletedTasks;
+    }
+
+    public long getJournalSequence() {
+        return journalSequence;
+    }
+
+    public void setJournalSequence(long journalSequence) {
+        this.journalSequence = journalSequence;
+    }
+
+    // Sequence number for the next journal record written for this user
+    public long nextJournalSequence() {
+        return ++journalSequence;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    // How many of the user's archive segments this state has already had its tasks removed for
+    // (UserHeader.ARCHIVED_UNKNOWN for users stored before it was recorded)
+    public int getArchivedSegments() {
+        return archivedSegments;
     }
 
-    // Add XP and handle leveling up
+    public void setArchivedSegments(int archivedSegments) {
+        this.archivedSegments = archivedSegments;
+    }
+
+    // Add XP and handle leveling up: one binary search over the level table, whatever the amount
     public void addXP(int amount) {
-        xp += amount;
-        while (xp >= xpNeeded(level)) {
-            xp -= xpNeeded(level);
-            level++;
-            coins += 50; // bonus on level-up
+        update(s -> withXp(s, amount));
+    }
+
+    private static Stats withXp(Stats s, int amount) {
+        if (amount <= 0 || s.level >= MAX_LEVEL) {
+            return new Stats(saturate((long) s.xp + amount), s.level, s.coins, s.totalCompletedTasks);
+        }
+        int from = Math.max(s.level, 1);
+        long total = LEVEL_START[from] + s.xp + amount;
+        int reached = Arrays.binarySearch(LEVEL_START, from, MAX_LEVEL + 1, total);
+        if (reached < 0) reached = -reached - 2; // the last level starting at or below total
+        int level = s.level;
+        int coins = s.coins;
+        if (reached > level) {
+            coins = saturate(coins + (long) LEVEL_UP_BONUS * (reached - level)); // bonus on level-up
+            level = reached;
         }
+        return new Stats(saturate(total - LEVEL_START[Math.max(level, 1)]), level, coins, s.totalCompletedTasks);
+    }
+
+    // Applies a change atomically, retrying if another thread got in first; returns the new stats
+    private Stats update(UnaryOperator<Stats> change) {
+        return stats.updateAndGet(change);
+    }
+
+    // XP, coins and completed tasks to add in one go, see grant()
+    public static class Grant {
+        public final int xp;
+        public final int coins;
+        public final int completedTasks;
+
+        public Grant(int xp, int coins, int completedTasks) {
+            this.xp = xp;
+            this.coins = coins;
+            this.completedTasks = completedTasks;
+        }
+    }
+
+    // Applies all grants at once: the deltas are summed first, so the level table is searched
+    // once however many there are. Returns the number of levels gained. The caller saves
+    // (and uploads) the user once afterwards.
+    public int grant(Grant... grants) {
+        long xpTotal = 0;
+        long coinTotal = 0;
+        long completedTotal = 0;
+        for (Grant grant : grants) {
+            xpTotal += grant.xp;
+            coinTotal += grant.coins;
+            completedTotal += grant.completedTasks;
+        }
+
+        while (true) {
+            Stats before = stats.get();
+            Stats after = new Stats(before.xp, before.level, saturate(before.coins + coinTotal),
+                    saturate(before.totalCompletedTasks + completedTotal));
+            if (xpTotal < 0) {
+                after = withXp(after, saturate(xpTotal));
+            }
+            for (long left = xpTotal; left > 0; ) {
+                int step = (int) Math.min(left, Integer.MAX_VALUE);
+                after = withXp(after, step);
+                left -= step;
+            }
+            // All grants land together or, if another update came first, are redone on top of it
+            if (stats.compareAndSet(before, after)) {
+                return after.level - before.level;
+            }
+        }
+    }
+
+    // Total XP earned since level 1
+    public long getTotalXp() {
+        return stats.get().getTotalXp();
     }
 
     public boolean spendCoins(int amount) {
-        if (coins >= amount) {
-            coins -= amount;
-            return true;
-        } else {
-            return false;
+        while (true) {
+            Stats s = stats.get();
+            if (s.coins < amount) return false;
+            if (stats.compareAndSet(s, new Stats(s.xp, s.level, s.coins - amount, s.totalCompletedTasks))) {
+                return true;
+            }
         }
     }
 
     // Add coins safely
     public void addCoins(int amount) {
-        coins += amount;
+        update(s -> new Stats(s.xp, s.level, saturate((long) s.coins + amount), s.totalCompletedTasks));
     }
 
     // XP required for next level
-    public int xpNeeded(int level) {
-        return 100 * (int) Math.pow(1.5, level - 1);
+    public long xpNeeded(int level) {
+        if (level >= XP_TO_NEXT.length) return Long.MAX_VALUE;
+        return XP_TO_NEXT[Math.max(level, 1)];
+    }
+
+    private static int saturate(long value) {
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, value));
     }
 
     // Setter methods for synchronization
     public void setXp(int xp) {
-        this.xp = xp;
+        update(s -> new Stats(xp, s.level, s.coins, s.totalCompletedTasks));
     }
 
     public void setLevel(int level) {
-        this.level = level;
+        update(s -> new Stats(s.xp, level, s.coins, s.totalCompletedTasks));
     }
 
     public void setCoins(int coins) {
-        this.coins = coins;
+        update(s -> new Stats(s.xp, s.level, coins, s.totalCompletedTasks));
+    }
+
+    public void setTotalCompletedTasks(int totalCompletedTasks) {
+        update(s -> new Stats(s.xp, s.level, s.coins, totalCompletedTasks));
     }
 
     // Initial state tracking for multiplayer mode
@@ -91,9 +494,10 @@ public class User {
     private boolean trackingInitialized = false;
 
     public void initializeTracking() {
-        this.initialXp = this.xp;
-        this.initialLevel = this.level;
-        this.initialCoins = this.coins;
+        Stats s = stats.get();
+        this.initialXp = s.xp;
+        this.initialLevel = s.level;
+        this.initialCoins = s.coins;
         this.trackingInitialized = true;
         System.out.println("Initialized tracking for " + username + ": XP=" + initialXp + ", Coins=" + initialCoins);
     }
@@ -120,15 +524,265 @@ public class User {
 
     // Calculate XP and coins gained during multiplayer session
     public int getXpGainedInSession() {
-        return trackingInitialized ? (xp - initialXp) : 0;
+        return trackingInitialized ? (getXp() - initialXp) : 0;
     }
 
     public int getCoinsGainedInSession() {
-        return trackingInitialized ? (coins - initialCoins) : 0;
+        return trackingInitialized ? (getCoins() - initialCoins) : 0;
     }
 
     // Method to increment the total completed tasks counter
     public void incrementCompletedTasksCounter() {
-        totalCompletedTasks++;
+        update(s -> new Stats(s.xp, s.level, s.coins, saturate((long) s.totalCompletedTasks + 1)));
+    }
+
+    // The task list as seen from outside. Reads go straight to the snapshot list and never
+    // block; changes are made one at a time and also update taskTotals and the id index.
+    private class TaskList extends AbstractList<Task> implements RandomAccess {
+        // Fills the list of a new or lazily loaded user
+        synchronized void load(List<Task> loaded) {
+            priorityIndex = null; // rebuilt when next asked for
+            // Only a header from before the calendar was stored leaves it unknown
+            completionCalendar.compareAndSet(null, CompletionCalendar.of(loaded));
+            if (columns != null) {
+                append(tasks.size(), loaded);
+                taskTotals.set(columns.totals());
+                return;
+            }
+            for (Task task : loaded) {
+                adopt(task);
+            }
+            tasks.addAll(loaded);
+            taskTotals.set(TaskTotals.of(loaded));
+        }
+
+        // The whole list at once, for applyMerge. Tasks without an id, or with one an earlier
+        // task of the list already has, get a new one.
+        synchronized void replaceWith(List<Task> merged) {
+            Set<Long> seen = new HashSet<>();
+            for (Task task : merged) {
+                if (task.getId() <= 0 || seen.contains(task.getId())) {
+                    task.setId(nextTaskId++);
+                }
+                seen.add(task.getId());
+                nextTaskId = Math.max(nextTaskId, task.getId() + 1);
+            }
+            priorityIndex = null;
+            if (columns != null) {
+                columns.setAll(merged);
+                taskTotals.set(columns.totals());
+                return;
+            }
+            tasksById.clear();
+            for (Task task : merged) {
+                tasksById.put(task.getId(), task);
+            }
+            tasks = new TaskArrayList(merged);
+            taskTotals.set(TaskTotals.of(merged));
+        }
+
+        // Columns copy each task in, so each one is checked against the ids added before it
+        private void append(int index, Collection<? extends Task> added) {
+            for (Task task : added) {
+                adopt(task);
+                columns.add(index++, task);
+            }
+        }
+
+        // Gives a task entering the list an id, unless it already has one no other task uses
+        // (a copy of a task of this user keeps its id; a copy from elsewhere may clash)
+        private void adopt(Task task) {
+            Task holder = lookup(task.getId());
+            if (task.getId() <= 0 || (holder != null && holder != task)) {
+                task.setId(nextTaskId++);
+            }
+            nextTaskId = Math.max(nextTaskId, task.getId() + 1);
+            if (columns == null) tasksById.put(task.getId(), task);
+        }
+
+        private void forget(Task task) {
+            tasksById.remove(task.getId(), task);
+            unindex(task);
+        }
+
+        private void index(Task task) {
+            TaskPriorityIndex index = priorityIndex;
+            if (index != null) index.add(task);
+        }
+
+        void unindex(Task task) {
+            TaskPriorityIndex index = priorityIndex;
+            if (index != null) index.remove(task);
+        }
+
+        @Override
+        public Task get(int index) {
+            return tasks.get(index);
+        }
+
+        @Override
+        public int size() {
+            return tasks.size();
+        }
+
+        @Override
+        public synchronized void add(int index, Task task) {
+            adopt(task);
+            tasks.add(index, task);
+            index(task);
+            taskTotals.updateAndGet(t -> t.plus(task));
+        }
+
+        @Override
+        public synchronized Task set(int index, Task task) {
+            if (columns != null) {
+                // The old row's id must be gone before the new task's id is checked
+                Task old = remove(index);
+                add(index, task);
+                return old;
+            }
+            Task old = tasks.set(index, task);
+            forget(old);
+            adopt(task);
+            index(task);
+            taskTotals.updateAndGet(t -> t.minus(old).plus(task));
+            return old;
+        }
+
+        @Override
+        public synchronized Task remove(int index) {
+            Task old = tasks.remove(index);
+            forget(old);
+            taskTotals.updateAndGet(t -> t.minus(old));
+            return old;
+        }
+
+        @Override
+        public synchronized boolean remove(Object o) {
+            if (!contains(o)) return false;
+            int index = tasks.indexOf(o);
+            if (index < 0) return false;
+            remove(index);
+            return true;
+        }
+
+        @Override
+        public synchronized boolean addAll(Collection<? extends Task> added) {
+            return addAll(tasks.size(), added);
+        }
+
+        // At most one copy of the underlying list however many tasks are added
+        @Override
+        public synchronized boolean addAll(int index, Collection<? extends Task> added) {
+            List<Task> copy = new ArrayList<>(added);
+            if (columns != null) {
+                append(index, copy);
+            } else {
+                for (Task task : copy) {
+                    adopt(task);
+                }
+                tasks.addAll(index, copy);
+            }
+            for (Task task : copy) {
+                index(task);
+            }
+            taskTotals.updateAndGet(t -> t.plus(copy));
+            return !copy.isEmpty();
+        }
+
+        @Override
+        public synchronized void clear() {
+            tasks.clear();
+            tasksById.clear();
+            priorityIndex = null;
+            taskTotals.set(TaskTotals.EMPTY);
+        }
+
+        @Override
+        public synchronized boolean removeIf(Predicate<? super Task> filter) {
+            List<Task> removed = new ArrayList<>();
+            tasks.removeIf(task -> {
+                if (!filter.test(task)) return false;
+                removed.add(task);
+                return true;
+            });
+            for (Task task : removed) {
+                forget(task);
+                taskTotals.updateAndGet(t -> t.minus(task));
+            }
+            return !removed.isEmpty();
+        }
+
+        @Override
+        public boolean removeAll(Collection<?> c) {
+            return removeIf(c::contains);
+        }
+
+        @Override
+        public boolean retainAll(Collection<?> c) {
+            return removeIf(task -> !c.contains(task));
+        }
+
+        @Override
+        public synchronized void replaceAll(UnaryOperator<Task> operator) {
+            if (columns != null) {
+                List<Task> replaced = new ArrayList<>(columns);
+                replaced.replaceAll(operator);
+                columns.clear();
+                load(replaced);
+                return;
+            }
+            tasks.replaceAll(operator);
+            tasksById.clear();
+            priorityIndex = null;
+            for (Task task : tasks) {
+                adopt(task);
+            }
+            taskTotals.set(TaskTotals.of(tasks));
+        }
+
+        @Override
+        public synchronized void sort(Comparator<? super Task> c) {
+            tasks.sort(c);
+        }
+
+        // Iterates a snapshot, so other threads may change the list meanwhile
+        @Override
+        public Iterator<Task> iterator() {
+            return tasks.iterator();
+        }
+
+        @Override
+        public Spliterator<Task> spliterator() {
+            return tasks.spliterator();
+        }
+
+        // O(1): a task is in the list exactly when the index maps its id to it (with columns,
+        // when a row has its id, as the list holds rows rather than the Task objects added)
+        @Override
+        public boolean contains(Object o) {
+            if (columns != null) return o instanceof Task && columns.containsId(((Task) o).getId());
+            return o instanceof Task && tasksById.get(((Task) o).getId()) == o;
+        }
+
+        @Override
+        public int indexOf(Object o) {
+            return tasks.indexOf(o);
+        }
+
+        @Override
+        public int lastIndexOf(Object o) {
+            return tasks.lastIndexOf(o);
+        }
+
+        @Override
+        public Object[] toArray() {
+            return tasks.toArray();
+        }
+
+        @Override
+        public <T> T[] toArray(T[] a) {
+            return tasks.toArray(a);
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,82 @@
+package models;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
+// What a user looked like when it was loaded or last saved, for merging a save that finds a
+// newer version stored: the stats, the completion calendar, and per task only its id and
+// whether it was completed (the one thing about a task that changes). Eight bytes per task
+// rather than a copy of the user. For users whose tasks were still unread, the ids are read
+// from the same source the first time a merge asks for them.
+public final class UserBaseline {
+    private final User.Stats stats;
+    private final long version;
+    private CompletionCalendar completionCalendar; // null until the tasks are read, for old headers
+    private Supplier<List<Task>> taskLoader;       // until the tasks are read
+    private long[] tasks;                          // id << 1 | completed, sorted
+
+    UserBaseline(User.Stats stats, CompletionCalendar completionCalendar, long version, List<Task> tasks) {
+        this.stats = stats;
+        this.completionCalendar = completionCalendar;
+        this.version = version;
+        this.tasks = encode(tasks);
+    }
+
+    UserBaseline(User.Stats stats, CompletionCalendar completionCalendar, long version, Supplier<List<Task>> taskLoader) {
+        this.stats = stats;
+        this.completionCalendar = completionCalendar;
+        this.version = version;
+        this.taskLoader = taskLoader;
+    }
+
+    public User.Stats getStats() {
+        return stats;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public synchronized CompletionCalendar getCompletionCalendar() {
+        readTasks();
+        return completionCalendar;
+    }
+
+    public boolean hasTask(long id) {
+        return find(id) >= 0;
+    }
+
+    public boolean wasCompleted(long id) {
+        int i = find(id);
+        return i >= 0 && (tasks[i] & 1) != 0;
+    }
+
+    private synchronized int find(long id) {
+        readTasks();
+        int i = Arrays.binarySearch(tasks, id << 1);
+        if (i >= 0) return i;
+        i = -i - 1; // where id << 1 would go: the completed entry, if there is one
+        return i < tasks.length && tasks[i] == (id << 1 | 1) ? i : -1;
+    }
+
+    private void readTasks() {
+        if (taskLoader == null) return;
+        List<Task> loaded = taskLoader.get();
+        tasks = encode(loaded);
+        if (completionCalendar == null) completionCalendar = CompletionCalendar.of(loaded);
+        taskLoader = null;
+    }
+
+    private static long[] encode(List<Task> tasks) {
+        long[] encoded = new long[tasks.size()];
+        int n = 0;
+        for (Task task : tasks) {
+            if (n == encoded.length) encoded = Arrays.copyOf(encoded, n * 2 + 1); // grew meanwhile
+            encoded[n++] = task.getId() << 1 | (task.isCompleted() ? 1 : 0);
+        }
+        encoded = n == encoded.length ? encoded : Arrays.copyOf(encoded, n);
+        Arrays.sort(encoded);
+        return encoded;
+    }
+}
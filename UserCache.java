@@ -0,0 +1,187 @@
+//util->UserCache
+package util;
+
+import models.Task;
+import models.User;
+import models.UserHeader;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+// LRU cache of loaded users, bounded by entry count and by the bytes the entries hold.
+// Each entry remembers the on-disk stamp (size/mtime of snapshot and journal) it was
+// decoded from and is only served while the stamp still matches.
+// An entry is a user's header plus its tasks, decoded from the snapshot the first time any
+// copy needs them and kept decoded after that. Callers always get their own User with
+// their own Task objects, since screens mutate the users they load. Users just written
+// are only remembered by their header.
+public class UserCache {
+    private final int maxEntries;
+    private final long maxBytes;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    private static class Entry {
+        final UserHeader header;
+        final Stamp stamp;
+        final long bytes; // the snapshot and journal it was read from, about what it holds either way
+        private Supplier<List<Task>> decoder; // null for header-only entries, and once decoded
+        private List<Task> tasks;
+
+        Entry(UserHeader header, Stamp stamp, long bytes, Supplier<List<Task>> decoder) {
+            this.header = header;
+            this.stamp = stamp;
+            this.bytes = bytes;
+            this.decoder = decoder;
+        }
+
+        boolean hasTasks() {
+            return decoder != null || tasks != null;
+        }
+
+        // Copies of the tasks, decoding them on first use; the decoded list is never handed out
+        synchronized List<Task> copyTasks() {
+            if (tasks == null) {
+                tasks = decoder.get();
+                decoder = null; // lets go of the snapshot bytes
+            }
+            List<Task> copies = new ArrayList<>(tasks.size());
+            for (Task task : tasks) {
+                copies.add(new Task(task));
+            }
+            return copies;
+        }
+    }
+
+    // Identifies one on-disk version of a user. snapshotKey is the file's identity (inode) where
+    // the platform has one: snapshots are replaced by a rename, so a rewrite by another process
+    // within the same clock tick and with the same length still gets a new key.
+    public static class Stamp {
+        final Object snapshotKey;
+        final long snapshotModified;
+        final long snapshotLength;
+        final long journalModified;
+        final long journalLength;
+
+        public Stamp(Object snapshotKey, long snapshotModified, long snapshotLength, long journalModified, long journalLength) {
+            this.snapshotKey = snapshotKey;
+            this.snapshotModified = snapshotModified;
+            this.snapshotLength = snapshotLength;
+            this.journalModified = journalModified;
+            this.journalLength = journalLength;
+        }
+
+        boolean matches(Stamp other) {
+            return Objects.equals(snapshotKey, other.snapshotKey)
+                    && snapshotModified == other.snapshotModified && snapshotLength == other.snapshotLength
+                    && journalModified == other.journalModified && journalLength == other.journalLength;
+        }
+    }
+
+    public UserCache(int maxEntries, long maxBytes) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    public synchronized User get(String username, Stamp stamp) {
+        Entry entry = entries.get(username);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        if (!entry.stamp.matches(stamp)) {
+            remove(username);
+            misses++;
+            return null;
+        }
+        if (!entry.hasTasks()) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return new User(entry.header, entry::copyTasks);
+    }
+
+    // Header of a cached user, without copying it
+    public synchronized UserHeader getHeader(String username, Stamp stamp) {
+        Entry entry = entries.get(username);
+        if (entry == null || !entry.stamp.matches(stamp)) return null;
+        hits++;
+        return entry.header;
+    }
+
+    // Caches a user read from `bytes` bytes of snapshot and journal; `decoder` reads its tasks
+    // when first needed. Returns the caller's own copy, like get().
+    public synchronized User put(String username, Stamp stamp, UserHeader header, long bytes, Supplier<List<Task>> decoder) {
+        Entry entry = new Entry(header, stamp, bytes, decoder);
+        add(username, entry);
+        return new User(header, entry::copyTasks);
+    }
+
+    // Remembers just the header, e.g. of a user that was just written: enough for the next
+    // version check, without copying the user
+    public synchronized void putHeader(String username, Stamp stamp, UserHeader header) {
+        add(username, new Entry(header, stamp, 0, null));
+    }
+
+    private void add(String username, Entry entry) {
+        remove(username);
+        if (entry.bytes > maxBytes) return;
+
+        entries.put(username, entry);
+        bytes += entry.bytes;
+
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || bytes > maxBytes) && it.hasNext()) {
+            Entry eldest = it.next().getValue();
+            it.remove();
+            bytes -= eldest.bytes;
+            evictions++;
+        }
+    }
+
+    public synchronized void invalidate(String username) {
+        remove(username);
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "UserCache[size=" + entries.size() + ", bytes=" + bytes + ", hits=" + hits
+                + ", misses=" + misses + ", evictions=" + evictions + "]";
+    }
+
+    private void remove(String username) {
+        Entry removed = entries.remove(username);
+        if (removed != null) bytes -= removed.bytes;
+    }
+}
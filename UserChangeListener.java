@@ -0,0 +1,8 @@
+//util->UserChangeListener
+package util;
+
+// Told when a stored user was changed by something other than this app instance
+// (another instance, a restore, a text editor). Called on a background thread.
+public interface UserChangeListener {
+    void userChanged(String username);
+}
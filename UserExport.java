@@ -0,0 +1,339 @@
+//util->UserExport
+package util;
+
+import com.google.gson.Strictness;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import models.CompletionCalendar;
+import models.Task;
+import models.User;
+import models.UserHeader;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+// Bulk backup and restore of accounts as NDJSON: one line per user, followed by one line
+// per task of that user and one per archived task (see TaskArchive):
+//   {"type":"user","username":"ann","xp":40,"level":3,"coins":120,"totalCompletedTasks":9,"password":"pbkdf2$...","tasks":2,"archivedTasks":1}
+//   {"type":"task","username":"ann","task":{"description":"Read ch. 4","xpReward":20,...}}
+//   {"type":"archived","username":"ann","task":{"description":"Read ch. 1","xpReward":20,...}}
+// Importing replaces the user's archive with the archived lines. Exports from before archived
+// tasks were included have no "archivedTasks"; importing those leaves the archive as it is.
+// Users are loaded (or saved) by a pool of threads, but at most a fixed window of them is
+// in memory at a time, however many accounts the store holds. A file name ending in .gz
+// is gzipped.
+public class UserExport {
+    private static final String GZIP_SUFFIX = ".gz";
+    private static final int THREADS = Integer.getInteger("studyleveling.exportThreads",
+            Runtime.getRuntime().availableProcessors());
+    // Users in flight at once: being loaded or encoded, or waiting to be written
+    private static final int WINDOW = Integer.getInteger("studyleveling.exportWindow", 256);
+
+    private static final TypeAdapter<Task> taskAdapter = UserJson.create().getAdapter(Task.class);
+
+    private final UserRepository repository;
+    private final TaskArchive archive;
+
+    public UserExport(UserRepository repository, TaskArchive archive) {
+        this.repository = repository;
+        this.archive = archive;
+    }
+
+    // Writes every user to the file (replacing it once complete); returns how many were written
+    public int exportTo(File file) throws IOException {
+        File tmp = new File(file.getAbsoluteFile().getParentFile(), file.getName() + ".tmp");
+        ExecutorService pool = newPool("UserExport-export");
+        // Lines of the users in flight, in listing order so the output is deterministic
+        Deque<Future<String>> window = new ArrayDeque<>();
+        int exported = 0;
+        try (Writer out = openWriter(tmp, file.getName().endsWith(GZIP_SUFFIX))) {
+            for (String username : repository.listUsers()) {
+                if (window.size() >= WINDOW) {
+                    exported += writeNext(window, out);
+                }
+                window.add(pool.submit(() -> encode(username)));
+            }
+            while (!window.isEmpty()) {
+                exported += writeNext(window, out);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        try {
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        return exported;
+    }
+
+    // Saves every user in the file, replacing stored users with the same name; returns how many
+    // were saved. Meant to be run with the app closed, like the other DataMigration commands.
+    public int importFrom(File file) throws IOException {
+        ExecutorService pool = newPool("UserExport-import");
+        Semaphore window = new Semaphore(WINDOW);
+        AtomicInteger imported = new AtomicInteger();
+        // Written in one go at the end: the stores rewrite or sync their password file per call
+        Map<String, String> passwordHashes = new ConcurrentHashMap<>();
+        try (JsonReader in = new JsonReader(openReader(file))) {
+            in.setStrictness(Strictness.LENIENT); // one top-level object per line
+            Account account = null;
+            while (in.peek() != JsonToken.END_DOCUMENT) {
+                Line line = readLine(in);
+                boolean ours = account != null && account.user.getUsername().equals(line.username) && line.task != null;
+                if ("user".equals(line.type)) {
+                    if (account != null) submit(pool, window, imported, passwordHashes, account);
+                    account = line.account;
+                } else if ("task".equals(line.type) && ours) {
+                    account.tasks.add(line.task);
+                } else if ("archived".equals(line.type) && ours && account.archived != null) {
+                    account.archived.add(line.task);
+                } else {
+                    System.out.println("⚠ Skipping " + line.type + " line for " + line.username);
+                }
+            }
+            if (account != null) submit(pool, window, imported, passwordHashes, account);
+        } finally {
+            pool.shutdown();
+        }
+        try {
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while saving imported users");
+        }
+        repository.savePasswordHashes(passwordHashes);
+        return imported.get();
+    }
+
+    // A user read from the file, with its tasks, waiting to be saved
+    private static class Account {
+        final User user;
+        // Added to the user in one go: its task list copies itself on every change
+        final List<Task> tasks = new ArrayList<>();
+        String passwordHash;
+        CompletionCalendar completionCalendar; // null in exports from before it was stored
+        List<Task> archived; // null in exports from before archived tasks were included
+
+        Account(User user) {
+            this.user = user;
+        }
+    }
+
+    private static class Line {
+        String type;
+        String username;
+        Account account;
+        Task task;
+    }
+
+    private String encode(String username) throws IOException {
+        User user = repository.load(username);
+        if (user == null) return null;
+
+        User.Stats stats = user.getStats();
+        List<Task> tasks = user.getTaskSnapshot();
+        // Archived tasks are read first, so the user line can say how many follow
+        StringWriter archived = new StringWriter();
+        JsonWriter archivedOut = new JsonWriter(archived);
+        archivedOut.setStrictness(Strictness.LENIENT); // several top-level objects
+        int archivedTasks = 0;
+        try (TaskArchive.History history = archive.history(username)) {
+            while (history.hasNext()) {
+                writeTask(archivedOut, "archived", username, history.next());
+                archived.write('\n');
+                archivedTasks++;
+            }
+        }
+
+        StringWriter lines = new StringWriter();
+        JsonWriter out = new JsonWriter(lines);
+        out.setStrictness(Strictness.LENIENT); // several top-level objects
+        out.beginObject();
+        out.name("type").value("user");
+        out.name("username").value(username);
+        out.name("xp").value(stats.getXp());
+        out.name("level").value(stats.getLevel());
+        out.name("coins").value(stats.getCoins());
+        out.name("totalCompletedTasks").value(stats.getTotalCompletedTasks());
+        out.name("completionDays");
+        UserJson.writeCalendar(out, user.getCompletionCalendar());
+        String hash = repository.loadPasswordHash(username);
+        if (hash != null) {
+            // Never write out a legacy plaintext password
+            out.name("password").value(CredentialStore.isHashed(hash) ? hash : CredentialStore.hashPassword(hash));
+        }
+        out.name("tasks").value(tasks.size());
+        out.name("archivedTasks").value(archivedTasks);
+        out.endObject();
+        lines.write('\n');
+        for (Task task : tasks) {
+            writeTask(out, "task", username, task);
+            lines.write('\n');
+        }
+        lines.write(archived.toString());
+        return lines.toString();
+    }
+
+    private static void writeTask(JsonWriter out, String type, String username, Task task) throws IOException {
+        out.beginObject();
+        out.name("type").value(type);
+        out.name("username").value(username);
+        out.name("task");
+        taskAdapter.write(out, task);
+        out.endObject();
+    }
+
+    private static int writeNext(Deque<Future<String>> window, Writer out) throws IOException {
+        String lines;
+        try {
+            lines = window.poll().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while exporting users");
+        } catch (ExecutionException e) {
+            throw new IOException("Could not export a user", e.getCause());
+        }
+        if (lines == null) return 0; // deleted since it was listed
+        out.write(lines);
+        return 1;
+    }
+
+    private static Line readLine(JsonReader in) throws IOException {
+        Line line = new Line();
+        String passwordHash = null;
+        int xp = 0;
+        int level = 1;
+        int coins = 0;
+        int totalCompletedTasks = 0;
+        CompletionCalendar completionCalendar = null;
+        boolean hasArchived = false;
+
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                continue;
+            }
+            switch (name) {
+                case "type": line.type = in.nextString(); break;
+                case "username": line.username = in.nextString(); break;
+                case "xp": xp = in.nextInt(); break;
+                case "level": level = in.nextInt(); break;
+                case "coins": coins = in.nextInt(); break;
+                case "totalCompletedTasks": totalCompletedTasks = in.nextInt(); break;
+                case "completionDays": completionCalendar = UserJson.readCalendar(in); break;
+                case "password": passwordHash = in.nextString(); break;
+                case "task": line.task = taskAdapter.read(in); break;
+                case "archivedTasks":
+                    in.skipValue(); // the count is for people reading the file, like "tasks"
+                    hasArchived = true;
+                    break;
+                default: in.skipValue();
+            }
+        }
+        in.endObject();
+
+        if ("user".equals(line.type) && line.username != null) {
+            User user = new User(line.username);
+            user.setXp(xp);
+            user.setLevel(level);
+            user.setCoins(coins);
+            user.setTotalCompletedTasks(totalCompletedTasks);
+            line.account = new Account(user);
+            line.account.passwordHash = passwordHash;
+            line.account.completionCalendar = completionCalendar;
+            if (hasArchived) line.account.archived = new ArrayList<>();
+        } else if ("user".equals(line.type)) {
+            line.type = "nameless user";
+        }
+        return line;
+    }
+
+    private void submit(ExecutorService pool, Semaphore window, AtomicInteger imported,
+                        Map<String, String> passwordHashes, Account account) throws IOException {
+        try {
+            window.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while importing users");
+        }
+        pool.execute(() -> {
+            try {
+                save(account);
+                if (account.passwordHash != null) {
+                    // Files from older exports can still carry plaintext passwords
+                    String hash = account.passwordHash;
+                    passwordHashes.put(account.user.getUsername(),
+                            CredentialStore.isHashed(hash) ? hash : CredentialStore.hashPassword(hash));
+                }
+                imported.incrementAndGet();
+            } catch (IOException | RuntimeException e) {
+                System.out.println("❌ Could not import " + account.user.getUsername());
+                e.printStackTrace();
+            } finally {
+                window.release();
+            }
+        });
+    }
+
+    private void save(Account account) throws IOException {
+        User user = account.user;
+        user.getTasks().addAll(account.tasks);
+        // Older exports say nothing about the archive; it is kept and taken as it is
+        user.setArchivedSegments(account.archived != null
+                ? archive.replace(user.getUsername(), account.archived) : UserHeader.ARCHIVED_UNKNOWN);
+        // Exports written before the calendar was: rebuilt from the tasks' completion dates
+        user.setCompletionCalendar(account.completionCalendar != null ? account.completionCalendar
+                : CompletionCalendar.of(account.tasks));
+        // Newer than whatever is stored, so a running instance merges instead of overwriting it
+        user.setVersion(UserRepository.storedVersion(repository.loadHeader(user.getUsername())) + 1);
+        repository.save(user);
+    }
+
+    private static ExecutorService newPool(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return Executors.newFixedThreadPool(Math.max(1, THREADS), r -> {
+            Thread t = new Thread(r, name + "-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    private static Writer openWriter(File file, boolean gzip) throws IOException {
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 1 << 16);
+        if (gzip) {
+            out = new GZIPOutputStream(out, 1 << 16);
+        }
+        return new OutputStreamWriter(out, StandardCharsets.UTF_8);
+    }
+
+    private static Reader openReader(File file) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(file), 1 << 16);
+        if (file.getName().endsWith(GZIP_SUFFIX)) {
+            in = new GZIPInputStream(in, 1 << 16);
+        }
+        return new InputStreamReader(in, StandardCharsets.UTF_8);
+    }
+}
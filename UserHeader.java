@@ -0,0 +1,99 @@
+package models;
+
+import java.util.List;
+
+// The fixed-size part of a user, without the task list. Snapshots store these fields
+// first, so they can be read without parsing any tasks (for listing and ranking users).
+public class UserHeader {
+    // oldestCompletionDay when no task is completed
+    public static final long NO_COMPLETED_TASKS = Long.MAX_VALUE;
+    // oldestCompletionDay for snapshots written before it was stored; the tasks have to be read to know
+    public static final long OLDEST_UNKNOWN = Long.MIN_VALUE;
+    // archivedSegments for snapshots written before it was stored
+    public static final int ARCHIVED_UNKNOWN = -1;
+
+    private final String username;
+    private final int xp;
+    private final int level;
+    private final int coins;
+    private final int totalCompletedTasks;
+    private final long journalSequence;
+    private final long version;
+    private final long oldestCompletionDay; // epoch day of the oldest completed task still in the user
+    private final TaskTotals taskTotals; // null if unknown without reading the tasks
+    private final CompletionCalendar completionCalendar; // null if unknown without reading the tasks
+    private final int archivedSegments; // TaskArchive segments whose tasks this snapshot no longer holds
+
+    public UserHeader(String username, int xp, int level, int coins, int totalCompletedTasks,
+                      long journalSequence, long version, long oldestCompletionDay, TaskTotals taskTotals,
+                      CompletionCalendar completionCalendar, int archivedSegments) {
+        this.username = username;
+        this.xp = xp;
+        this.level = level;
+        this.coins = coins;
+        this.totalCompletedTasks = totalCompletedTasks;
+        this.journalSequence = journalSequence;
+        this.version = version;
+        this.oldestCompletionDay = oldestCompletionDay;
+        this.taskTotals = taskTotals;
+        this.completionCalendar = completionCalendar;
+        this.archivedSegments = archivedSegments;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public int getXp() {
+        return xp;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public int getCoins() {
+        return coins;
+    }
+
+    public int getTotalCompletedTasks() {
+        return totalCompletedTasks;
+    }
+
+    public long getJournalSequence() {
+        return journalSequence;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public long getOldestCompletionDay() {
+        return oldestCompletionDay;
+    }
+
+    // Null for snapshots written before the totals were stored
+    public TaskTotals getTaskTotals() {
+        return taskTotals;
+    }
+
+    // Null for snapshots written before the calendar was stored
+    public CompletionCalendar getCompletionCalendar() {
+        return completionCalendar;
+    }
+
+    // ARCHIVED_UNKNOWN for snapshots written before it was stored
+    public int getArchivedSegments() {
+        return archivedSegments;
+    }
+
+    public static long oldestCompletionDay(List<Task> tasks) {
+        long oldest = NO_COMPLETED_TASKS;
+        for (Task task : tasks) {
+            if (task.isCompleted() && task.getCompletionDate() != null) {
+                oldest = Math.min(oldest, task.getCompletionDate().toEpochDay());
+            }
+        }
+        return oldest;
+    }
+}
@@ -0,0 +1,366 @@
+//util->UserJson
+package util;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import models.CompletionCalendar;
+import models.Task;
+import models.TaskTotals;
+import models.User;
+import models.UserHeader;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Hand-written streaming adapters for the persisted models. They read and write straight
+// through JsonReader/JsonWriter instead of going through reflection or JsonElement trees.
+public class UserJson {
+
+    // Compact output unless -Dstudyleveling.prettyJson=true is set for debugging
+    public static Gson create() {
+        GsonBuilder builder = new GsonBuilder()
+                .registerTypeAdapter(User.class, new UserAdapter().nullSafe())
+                .registerTypeAdapter(Task.class, new TaskAdapter().nullSafe())
+                .registerTypeAdapter(LocalDate.class, new LocalDateAdapter().nullSafe());
+        if (Boolean.getBoolean("studyleveling.prettyJson")) {
+            builder.setPrettyPrinting();
+        }
+        return builder.create();
+    }
+
+    // Reads only the header fields in front of "tasks", leaving the task list unread.
+    // Returns null for files that do not start with the header (written before the
+    // header-first layout); those need a full read.
+    public static UserHeader readHeader(Reader reader) throws IOException {
+        JsonReader in = new JsonReader(reader);
+        String username = null;
+        int xp = 0;
+        int level = 1;
+        int coins = 0;
+        int totalCompletedTasks = 0;
+        long journalSequence = -1;
+        long version = 0;
+        long oldestCompletionDay = UserHeader.OLDEST_UNKNOWN;
+        TaskTotals taskTotals = null;
+        CompletionCalendar completionCalendar = null;
+        int archivedSegments = UserHeader.ARCHIVED_UNKNOWN;
+
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if (name.equals("tasks")) break;
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                continue;
+            }
+            switch (name) {
+                case "username": username = in.nextString(); break;
+                case "xp": xp = in.nextInt(); break;
+                case "level": level = in.nextInt(); break;
+                case "coins": coins = in.nextInt(); break;
+                case "totalCompletedTasks": totalCompletedTasks = in.nextInt(); break;
+                case "journalSequence": journalSequence = in.nextLong(); break;
+                case "version": version = in.nextLong(); break;
+                case "oldestCompletionDay": oldestCompletionDay = in.nextLong(); break;
+                case "taskTotals": taskTotals = readTotals(in); break;
+                case "completionDays": completionCalendar = readCalendar(in); break;
+                case "archivedSegments": archivedSegments = in.nextInt(); break;
+                default: in.skipValue();
+            }
+        }
+        // journalSequence is always written ahead of the tasks by UserAdapter
+        if (username == null || journalSequence < 0) return null;
+        return new UserHeader(username, xp, level, coins, totalCompletedTasks, journalSequence, version, oldestCompletionDay,
+                taskTotals, completionCalendar, archivedSegments);
+    }
+
+    // {"tasks":[..],"completed":[..],"xp":[..],"coins":[..]}, one entry per difficulty
+    static void writeTotals(JsonWriter out, TaskTotals totals) throws IOException {
+        Task.Difficulty[] difficulties = Task.Difficulty.values();
+        out.beginObject();
+        out.name("tasks").beginArray();
+        for (Task.Difficulty d : difficulties) out.value(totals.getTasks(d));
+        out.endArray();
+        out.name("completed").beginArray();
+        for (Task.Difficulty d : difficulties) out.value(totals.getCompleted(d));
+        out.endArray();
+        out.name("xp").beginArray();
+        for (Task.Difficulty d : difficulties) out.value(totals.getCompletedXp(d));
+        out.endArray();
+        out.name("coins").beginArray();
+        for (Task.Difficulty d : difficulties) out.value(totals.getCompletedCoins(d));
+        out.endArray();
+        out.endObject();
+    }
+
+    static TaskTotals readTotals(JsonReader in) throws IOException {
+        int n = Task.Difficulty.values().length;
+        long[][] columns = new long[4][n];
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            int column = name.equals("tasks") ? 0 : name.equals("completed") ? 1
+                    : name.equals("xp") ? 2 : name.equals("coins") ? 3 : -1;
+            if (column < 0 || in.peek() != JsonToken.BEGIN_ARRAY) {
+                in.skipValue();
+                continue;
+            }
+            in.beginArray();
+            for (int d = 0; in.hasNext(); d++) {
+                long value = in.nextLong();
+                if (d < n) columns[column][d] = value;
+            }
+            in.endArray();
+        }
+        in.endObject();
+        return new TaskTotals(toInts(columns[0]), toInts(columns[1]), columns[2], columns[3]);
+    }
+
+    // {"days":[..],"tasks":[..],"xp":[..],"coins":[..]}, one entry per epoch day with a completion
+    static void writeCalendar(JsonWriter out, CompletionCalendar calendar) throws IOException {
+        out.beginObject();
+        out.name("days").beginArray();
+        for (long day = calendar.firstDay(); day <= calendar.lastDay(); day++) {
+            if (calendar.getTasks(day) > 0) out.value(day);
+        }
+        out.endArray();
+        out.name("tasks").beginArray();
+        for (long day = calendar.firstDay(); day <= calendar.lastDay(); day++) {
+            if (calendar.getTasks(day) > 0) out.value(calendar.getTasks(day));
+        }
+        out.endArray();
+        out.name("xp").beginArray();
+        for (long day = calendar.firstDay(); day <= calendar.lastDay(); day++) {
+            if (calendar.getTasks(day) > 0) out.value(calendar.getXp(day));
+        }
+        out.endArray();
+        out.name("coins").beginArray();
+        for (long day = calendar.firstDay(); day <= calendar.lastDay(); day++) {
+            if (calendar.getTasks(day) > 0) out.value(calendar.getCoins(day));
+        }
+        out.endArray();
+        out.endObject();
+    }
+
+    static CompletionCalendar readCalendar(JsonReader in) throws IOException {
+        long[][] columns = {new long[0], new long[0], new long[0], new long[0]};
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            int column = name.equals("days") ? 0 : name.equals("tasks") ? 1
+                    : name.equals("xp") ? 2 : name.equals("coins") ? 3 : -1;
+            if (column < 0 || in.peek() != JsonToken.BEGIN_ARRAY) {
+                in.skipValue();
+                continue;
+            }
+            long[] values = new long[16];
+            int n = 0;
+            in.beginArray();
+            while (in.hasNext()) {
+                if (n == values.length) values = Arrays.copyOf(values, n * 2);
+                values[n++] = in.nextLong();
+            }
+            in.endArray();
+            columns[column] = Arrays.copyOf(values, n);
+        }
+        in.endObject();
+        for (long[] column : columns) {
+            if (column.length != columns[0].length) throw new IOException("Corrupt completion days");
+        }
+        return CompletionCalendar.of(columns[0], toInts(columns[1]), columns[2], columns[3]);
+    }
+
+    private static int[] toInts(long[] values) {
+        int[] ints = new int[values.length];
+        for (int i = 0; i < values.length; i++) ints[i] = (int) values[i];
+        return ints;
+    }
+
+    static class LocalDateAdapter extends TypeAdapter<LocalDate> {
+        private final DateTimeFormatter formatter = DateTimeFormatter.ISO_LOCAL_DATE;
+
+        @Override
+        public void write(JsonWriter out, LocalDate value) throws IOException {
+            out.value(formatter.format(value));
+        }
+
+        @Override
+        public LocalDate read(JsonReader in) throws IOException {
+            return LocalDate.parse(in.nextString(), formatter);
+        }
+    }
+
+    static class TaskAdapter extends TypeAdapter<Task> {
+        private final LocalDateAdapter dates = new LocalDateAdapter();
+
+        @Override
+        public void write(JsonWriter out, Task task) throws IOException {
+            out.beginObject();
+            if (task.getId() != 0) {
+                out.name("id").value(task.getId());
+            }
+            out.name("description").value(task.getDescription());
+            out.name("xpReward").value(task.getXpReward());
+            out.name("coinReward").value(task.getCoinReward());
+            out.name("difficulty").value(task.getDifficulty().name());
+            out.name("completed").value(task.isCompleted());
+            if (task.getCompletionDate() != null) {
+                out.name("completionDate");
+                dates.write(out, task.getCompletionDate());
+            }
+            out.endObject();
+        }
+
+        @Override
+        public Task read(JsonReader in) throws IOException {
+            long id = 0;
+            String description = "";
+            int xpReward = 0;
+            int coinReward = 0;
+            Task.Difficulty difficulty = null;
+            boolean completed = false;
+            LocalDate completionDate = null;
+
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (in.peek() == JsonToken.NULL) {
+                    in.nextNull();
+                    continue;
+                }
+                switch (name) {
+                    case "id": id = in.nextLong(); break;
+                    case "description": description = in.nextString(); break;
+                    case "xpReward": xpReward = in.nextInt(); break;
+                    case "coinReward": coinReward = in.nextInt(); break;
+                    case "difficulty": difficulty = parseDifficulty(in.nextString()); break;
+                    case "completed": completed = in.nextBoolean(); break;
+                    case "completionDate": completionDate = dates.read(in); break;
+                    default: in.skipValue();
+                }
+            }
+            in.endObject();
+
+            Task task = new Task(description, xpReward, coinReward, difficulty);
+            task.setId(id);
+            if (completed) {
+                task.setCompleted(true);
+                // setCompleted stamps today's date; keep what was stored (possibly none)
+                task.setCompletionDate(completionDate);
+            }
+            return task;
+        }
+
+        private static Task.Difficulty parseDifficulty(String value) {
+            try {
+                return Task.Difficulty.valueOf(value);
+            } catch (IllegalArgumentException e) {
+                return Task.Difficulty.EASY;
+            }
+        }
+    }
+
+    // Writes the small header fields before the task list
+    static class UserAdapter extends TypeAdapter<User> {
+        private final TaskAdapter taskAdapter = new TaskAdapter();
+
+        @Override
+        public void write(JsonWriter out, User user) throws IOException {
+            // One consistent view, even if the UI is changing the user meanwhile
+            User.Stats stats = user.getStats();
+            List<Task> tasks = user.getTaskSnapshot();
+            out.beginObject();
+            // Always first, so UserMigrations can tell the version without parsing further
+            out.name("schemaVersion").value(UserMigrations.CURRENT_SCHEMA);
+            out.name("username").value(user.getUsername());
+            out.name("xp").value(stats.getXp());
+            out.name("level").value(stats.getLevel());
+            out.name("coins").value(stats.getCoins());
+            out.name("totalCompletedTasks").value(stats.getTotalCompletedTasks());
+            out.name("journalSequence").value(user.getJournalSequence());
+            out.name("version").value(user.getVersion());
+            // Derived from the tasks; kept in the header so archiving can skip users without reading them
+            out.name("oldestCompletionDay").value(UserHeader.oldestCompletionDay(tasks));
+            // Also derived; lets the progress screens show totals without reading the tasks
+            out.name("taskTotals");
+            writeTotals(out, TaskTotals.of(tasks));
+            // Not derived: it also remembers tasks completed and since deleted or archived
+            out.name("completionDays");
+            writeCalendar(out, user.getCompletionCalendar());
+            out.name("archivedSegments").value(user.getArchivedSegments());
+            out.name("tasks");
+            out.beginArray();
+            for (Task task : tasks) {
+                taskAdapter.write(out, task);
+            }
+            out.endArray();
+            out.endObject();
+        }
+
+        @Override
+        public User read(JsonReader in) throws IOException {
+            String username = null;
+            int xp = 0;
+            int level = 1;
+            int coins = 0;
+            int totalCompletedTasks = 0;
+            long journalSequence = 0;
+            long version = 0;
+            CompletionCalendar completionCalendar = null;
+            int archivedSegments = UserHeader.ARCHIVED_UNKNOWN;
+            List<Task> tasks = new ArrayList<>();
+
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (in.peek() == JsonToken.NULL) {
+                    in.nextNull();
+                    continue;
+                }
+                switch (name) {
+                    case "username": username = in.nextString(); break;
+                    case "xp": xp = in.nextInt(); break;
+                    case "level": level = in.nextInt(); break;
+                    case "coins": coins = in.nextInt(); break;
+                    case "totalCompletedTasks": totalCompletedTasks = in.nextInt(); break;
+                    case "journalSequence": journalSequence = in.nextLong(); break;
+                    case "version": version = in.nextLong(); break;
+                    case "completionDays": completionCalendar = readCalendar(in); break;
+                    case "archivedSegments": archivedSegments = in.nextInt(); break;
+                    case "tasks":
+                        in.beginArray();
+                        while (in.hasNext()) {
+                            tasks.add(taskAdapter.read(in));
+                        }
+                        in.endArray();
+                        break;
+                    // Older files also carry the multiplayer session tracking fields; those
+                    // are per-session state and are no longer persisted
+                    default: in.skipValue();
+                }
+            }
+            in.endObject();
+
+            User user = new User(username);
+            user.setXp(xp);
+            user.setLevel(level);
+            user.setCoins(coins);
+            user.setTotalCompletedTasks(totalCompletedTasks);
+            user.setJournalSequence(journalSequence);
+            user.setVersion(version);
+            user.setArchivedSegments(archivedSegments);
+            user.getTasks().addAll(tasks);
+            user.setCompletionCalendar(completionCalendar != null ? completionCalendar : CompletionCalendar.of(tasks));
+            return user;
+        }
+    }
+}
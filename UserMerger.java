@@ -0,0 +1,14 @@
+//util->UserMerger
+package util;
+
+import models.User;
+import models.UserBaseline;
+
+// Resolves a save conflict: another User instance (or another process) saved the same
+// username after `mine` was loaded. Implementations rebase `mine` onto `stored` through
+// User.applyMerge, so screens holding it see the merged state, and take over the stored version.
+// `base` is the state `mine` was loaded or last saved with; it may be null for users that
+// were created in memory, and `stored` is null if the stored user has gone away.
+public interface UserMerger {
+    void merge(UserBaseline base, User mine, User stored);
+}
@@ -0,0 +1,312 @@
+//util->UserMigrations
+package util;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import models.CompletionCalendar;
+import models.Task;
+import models.TaskTotals;
+import models.UserHeader;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+// Upgrades stored JSON users to the current schema before they are parsed. Each step reads
+// the old snapshot token by token and writes the next schema version, so no JSON tree is
+// built; steps are chained until the snapshot is current. The schema version is the first
+// field UserJson writes. Binary snapshots carry their own version and are re-encoded.
+//
+// To change the stored layout: bump CURRENT_SCHEMA, add a Migration from the previous
+// version to STEPS, and keep the readers simple (they only ever see current files).
+public class UserMigrations {
+    public static final int CURRENT_SCHEMA = 4;
+
+    interface Migration {
+        // Copies one user from `in` (schema n) to `out` (schema n + 1)
+        void migrate(JsonReader in, JsonWriter out) throws IOException;
+    }
+
+    // STEPS[n] upgrades schema n to n + 1
+    private static final Migration[] STEPS = {
+            new Unversioned(),
+            new AddTaskTotals(),
+            new AssignTaskIds(),
+            new AddCompletionDays(),
+    };
+
+    // The snapshot in the current format, or null if it already is
+    public static byte[] upgrade(byte[] data) throws IOException {
+        if (BinaryUserCodec.isBinary(data)) {
+            if (BinaryUserCodec.version(data) >= BinaryUserCodec.VERSION) return null;
+            return BinaryUserCodec.encode(BinaryUserCodec.decode(data));
+        }
+
+        int version = schemaVersion(data);
+        if (version >= CURRENT_SCHEMA) return null;
+        for (; version < CURRENT_SCHEMA; version++) {
+            ByteArrayOutputStream upgraded = new ByteArrayOutputStream(data.length + 64);
+            try (JsonReader in = reader(data);
+                 JsonWriter out = new JsonWriter(new OutputStreamWriter(upgraded, StandardCharsets.UTF_8))) {
+                STEPS[version].migrate(in, out);
+            }
+            data = upgraded.toByteArray();
+        }
+        return data;
+    }
+
+    // 0 for files written before the schema version was stored
+    static int schemaVersion(byte[] data) throws IOException {
+        try (JsonReader in = reader(data)) {
+            in.beginObject();
+            if (in.hasNext() && in.nextName().equals("schemaVersion")) {
+                return in.nextInt();
+            }
+            return 0;
+        }
+    }
+
+    private static JsonReader reader(byte[] data) {
+        return new JsonReader(new InputStreamReader(new ByteArrayInputStream(data), StandardCharsets.UTF_8));
+    }
+
+    // Schema 0 is everything before the version field: the original reflection-based layout
+    // (tasks ahead of the counters, the multiplayer session fields, no totalCompletedTasks in
+    // the oldest files, difficulty missing or null) and the later header-first layout.
+    // Schema 1 is header-first with every field present and a difficulty on every task.
+    private static class Unversioned implements Migration {
+        @Override
+        public void migrate(JsonReader in, JsonWriter out) throws IOException {
+            String username = null;
+            long xp = 0, level = 1, coins = 0, journalSequence = 0, version = 0;
+            Long totalCompletedTasks = null;
+            Long oldestCompletionDay = null;
+            // Tasks are copied as JSON text (not objects) and written after the header fields
+            StringWriter tasks = new StringWriter();
+            TaskStats stats = new TaskStats();
+            boolean hasTasks = false;
+
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (in.peek() == JsonToken.NULL) {
+                    in.nextNull();
+                    continue;
+                }
+                switch (name) {
+                    case "username": username = in.nextString(); break;
+                    case "xp": xp = in.nextLong(); break;
+                    case "level": level = in.nextLong(); break;
+                    case "coins": coins = in.nextLong(); break;
+                    case "totalCompletedTasks": totalCompletedTasks = in.nextLong(); break;
+                    case "journalSequence": journalSequence = in.nextLong(); break;
+                    case "version": version = in.nextLong(); break;
+                    case "oldestCompletionDay": oldestCompletionDay = in.nextLong(); break;
+                    case "tasks":
+                        hasTasks = true;
+                        copyTasks(in, new JsonWriter(tasks), stats);
+                        break;
+                    // initialXp, initialLevel, initialCoins, trackingInitialized: session state
+                    default: in.skipValue();
+                }
+            }
+            in.endObject();
+
+            out.beginObject();
+            out.name("schemaVersion").value(1);
+            out.name("username").value(username);
+            out.name("xp").value(xp);
+            out.name("level").value(level);
+            out.name("coins").value(coins);
+            // Files from before the counter existed: the best estimate is what is still in the list
+            out.name("totalCompletedTasks").value(totalCompletedTasks != null ? totalCompletedTasks : stats.completed);
+            out.name("journalSequence").value(journalSequence);
+            out.name("version").value(version);
+            out.name("oldestCompletionDay").value(oldestCompletionDay != null ? oldestCompletionDay : stats.oldestCompletionDay);
+            out.name("tasks");
+            if (hasTasks) {
+                out.jsonValue(tasks.toString());
+            } else {
+                out.beginArray().endArray();
+            }
+            out.endObject();
+        }
+
+        private static class TaskStats {
+            long completed;
+            long oldestCompletionDay = UserHeader.NO_COMPLETED_TASKS;
+        }
+
+        private static void copyTasks(JsonReader in, JsonWriter out, TaskStats stats) throws IOException {
+            in.beginArray();
+            out.beginArray();
+            while (in.hasNext()) {
+                if (in.peek() == JsonToken.NULL) {
+                    in.nextNull();
+                    continue;
+                }
+                copyTask(in, out, stats);
+            }
+            in.endArray();
+            out.endArray();
+            out.flush();
+        }
+
+        private static void copyTask(JsonReader in, JsonWriter out, TaskStats stats) throws IOException {
+            String difficulty = "EASY";
+            boolean completed = false;
+            String completionDate = null;
+
+            in.beginObject();
+            out.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (in.peek() == JsonToken.NULL) {
+                    in.nextNull();
+                    continue;
+                }
+                switch (name) {
+                    case "description": out.name(name).value(in.nextString()); break;
+                    case "xpReward":
+                    case "coinReward": out.name(name).value(in.nextLong()); break;
+                    case "difficulty": difficulty = knownDifficulty(in.nextString()); break;
+                    case "completed": completed = in.nextBoolean(); break;
+                    case "completionDate": completionDate = in.nextString(); break;
+                    default: in.skipValue();
+                }
+            }
+            in.endObject();
+            out.name("difficulty").value(difficulty);
+            out.name("completed").value(completed);
+            if (completionDate != null) {
+                out.name("completionDate").value(completionDate);
+            }
+            out.endObject();
+
+            if (completed) {
+                stats.completed++;
+                if (completionDate != null) {
+                    stats.oldestCompletionDay = Math.min(stats.oldestCompletionDay, LocalDate.parse(completionDate).toEpochDay());
+                }
+            }
+        }
+
+        private static String knownDifficulty(String value) {
+            for (Task.Difficulty difficulty : Task.Difficulty.values()) {
+                if (difficulty.name().equals(value)) return value;
+            }
+            return "EASY";
+        }
+    }
+
+    // A step that only adds to the header and the tasks. Schema 1 and later always end with
+    // the tasks, so they are read before the new header fields have to be written.
+    private abstract static class TaskListStep implements Migration {
+        private final UserJson.TaskAdapter taskAdapter = new UserJson.TaskAdapter();
+        private final int toVersion;
+
+        TaskListStep(int toVersion) {
+            this.toVersion = toVersion;
+        }
+
+        // Changes the tasks as needed and writes any new header fields
+        abstract void upgrade(List<Task> tasks, JsonWriter out) throws IOException;
+
+        @Override
+        public void migrate(JsonReader in, JsonWriter out) throws IOException {
+            out.beginObject();
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (in.peek() == JsonToken.NULL) {
+                    in.nextNull();
+                    continue;
+                }
+                switch (name) {
+                    case "schemaVersion":
+                        in.skipValue();
+                        out.name(name).value(toVersion);
+                        break;
+                    case "username": out.name(name).value(in.nextString()); break;
+                    case "xp":
+                    case "level":
+                    case "coins":
+                    case "totalCompletedTasks":
+                    case "journalSequence":
+                    case "version":
+                    case "oldestCompletionDay":
+                    case "archivedSegments": out.name(name).value(in.nextLong()); break;
+                    case "taskTotals":
+                        out.name(name);
+                        UserJson.writeTotals(out, UserJson.readTotals(in));
+                        break;
+                    case "completionDays":
+                        out.name(name);
+                        UserJson.writeCalendar(out, UserJson.readCalendar(in));
+                        break;
+                    case "tasks":
+                        List<Task> tasks = new ArrayList<>();
+                        in.beginArray();
+                        while (in.hasNext()) {
+                            tasks.add(taskAdapter.read(in));
+                        }
+                        in.endArray();
+                        upgrade(tasks, out);
+                        out.name("tasks").beginArray();
+                        for (Task task : tasks) {
+                            taskAdapter.write(out, task);
+                        }
+                        out.endArray();
+                        break;
+                    default: in.skipValue();
+                }
+            }
+            in.endObject();
+            out.endObject();
+        }
+    }
+
+    // Schema 2 adds the task totals to the header, ahead of the tasks
+    private static class AddTaskTotals extends TaskListStep {
+        AddTaskTotals() {
+            super(2);
+        }
+
+        @Override
+        void upgrade(List<Task> tasks, JsonWriter out) throws IOException {
+            out.name("taskTotals");
+            UserJson.writeTotals(out, TaskTotals.of(tasks));
+        }
+    }
+
+    // Schema 3 gives every task an id, numbered in list order
+    private static class AssignTaskIds extends TaskListStep {
+        AssignTaskIds() {
+            super(3);
+        }
+
+        @Override
+        void upgrade(List<Task> tasks, JsonWriter out) {
+            for (int i = 0; i < tasks.size(); i++) {
+                tasks.get(i).setId(i + 1);
+            }
+        }
+    }
+
+    // Schema 4 adds the completions per day to the header, from the tasks' completion dates
+    // (tasks deleted or archived before this are not in it)
+    private static class AddCompletionDays extends TaskListStep {
+        AddCompletionDays() {
+            super(4);
+        }
+
+        @Override
+        void upgrade(List<Task> tasks, JsonWriter out) throws IOException {
+            out.name("completionDays");
+            UserJson.writeCalendar(out, CompletionCalendar.of(tasks));
+        }
+    }
+}
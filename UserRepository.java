@@ -0,0 +1,111 @@
+//util->UserRepository
+package util;
+
+import models.User;
+import models.UserHeader;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Storage engine behind DataManager. DataManager keeps the write-behind queue and calls
+// into one of these; pick the implementation with -Dstudyleveling.storage=json|memory|file|mapped.
+// Implementations report I/O problems by logging them, like the rest of DataManager,
+// and return null/false instead of throwing.
+public interface UserRepository {
+
+    // Returns null if the user has never been saved
+    User load(String username);
+
+    // Just the fixed fields, for listing and ranking; implementations avoid reading the tasks
+    default UserHeader loadHeader(String username) {
+        User user = load(username);
+        return user != null ? user.getHeader() : null;
+    }
+
+    void save(User user);
+
+    // Persists journal records that are already applied to the user. Stores without a
+    // journal just write the whole user.
+    default void append(User user, List<TaskJournal.Record> records) {
+        save(user);
+    }
+
+    // Optimistic save: writes the user (the given journal records, or a whole snapshot if
+    // records is null) only if the stored version still equals user.getVersion(), and bumps
+    // the version. Returns false without writing if another instance saved the user since.
+    default boolean saveIfUnchanged(User user, List<TaskJournal.Record> records) {
+        synchronized (this) {
+            if (storedVersion(loadHeader(user.getUsername())) != user.getVersion()) return false;
+            bumpVersion(user, records);
+            if (records == null) {
+                save(user);
+            } else {
+                append(user, records);
+            }
+            return true;
+        }
+    }
+
+    static long storedVersion(UserHeader stored) {
+        return stored == null ? 0 : stored.getVersion();
+    }
+
+    // The new version is also written into the last journal record so that replay restores it
+    static void bumpVersion(User user, List<TaskJournal.Record> records) {
+        user.setVersion(user.getVersion() + 1);
+        if (records != null && !records.isEmpty()) {
+            records.get(records.size() - 1).version = user.getVersion();
+        }
+    }
+
+    boolean exists(String username);
+
+    boolean verifyPassword(String username, String password);
+
+    void savePassword(String username, String password);
+
+    // The stored hash (CredentialStore format), or null; used to copy accounts between stores
+    String loadPasswordHash(String username);
+
+    // Stores an already hashed password as-is
+    void savePasswordHash(String username, String hash);
+
+    // Several at once; stores that rewrite or sync a file per password do it once for all
+    default void savePasswordHashes(Map<String, String> hashes) {
+        hashes.forEach(this::savePasswordHash);
+    }
+
+    // Registers for changes made to the store from outside this repository (another process).
+    // Stores that keep their file locked for the whole session never call it.
+    default void addChangeListener(UserChangeListener listener) {
+    }
+
+    // Usernames of all saved users
+    List<String> listUsers();
+
+    default Map<String, User> loadAll(Collection<String> usernames) {
+        Map<String, User> users = new LinkedHashMap<>();
+        for (String username : usernames) {
+            User user = load(username);
+            if (user != null) users.put(username, user);
+        }
+        return users;
+    }
+
+    default Map<String, UserHeader> loadHeaders(Collection<String> usernames) {
+        Map<String, UserHeader> headers = new LinkedHashMap<>();
+        for (String username : usernames) {
+            UserHeader header = loadHeader(username);
+            if (header != null) headers.put(username, header);
+        }
+        return headers;
+    }
+
+    default void saveAll(Collection<User> users) {
+        for (User user : users) {
+            save(user);
+        }
+    }
+}